@@ -0,0 +1,20 @@
+package io.token.sample.rpc.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual threads, the Java 21 version of {@code src/main}'s class of the same name. Packaged under
+ * {@code META-INF/versions/21} of the jars.
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return an executor that starts a new virtual thread named {@code name-N} for every task
+     */
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+}
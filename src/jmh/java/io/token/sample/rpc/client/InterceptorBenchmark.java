@@ -0,0 +1,89 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.Channel;
+import io.grpc.ClientInterceptors;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.token.proto.bankapi.Bankapi.HealthCheckRequest;
+import io.token.proto.bankapi.Bankapi.HealthCheckResponse;
+import io.token.proto.bankapi.HealthCheckServiceGrpc;
+import io.token.proto.bankapi.HealthCheckServiceGrpc.HealthCheckServiceBlockingStub;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Overhead of {@link MetadataInterceptor} on a unary call over an in-process channel, compared
+ * with the same call on the bare channel. Everything runs on the calling thread, so the difference
+ * between the two is the interceptor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InterceptorBenchmark {
+    private static final HealthCheckRequest REQUEST = HealthCheckRequest.newBuilder()
+            .setBankId("ruby")
+            .build();
+
+    private Server server;
+    private ManagedChannel channel;
+    private HealthCheckServiceBlockingStub plain;
+    private HealthCheckServiceBlockingStub intercepted;
+    private HealthCheckServiceBlockingStub interceptedPerCallBank;
+
+    @Setup
+    public void setup() throws IOException {
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .directExecutor()
+                .addService(new HealthCheckServiceGrpc.HealthCheckServiceImplBase() {
+                    @Override
+                    public void healthCheck(HealthCheckRequest request, StreamObserver<HealthCheckResponse> responseObserver) {
+                        responseObserver.onNext(HealthCheckResponse.getDefaultInstance());
+                        responseObserver.onCompleted();
+                    }
+                })
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name)
+                .directExecutor()
+                .build();
+        Channel interceptedChannel = ClientInterceptors.intercept(channel, new MetadataInterceptor("ruby"));
+        plain = HealthCheckServiceGrpc.newBlockingStub(channel);
+        intercepted = HealthCheckServiceGrpc.newBlockingStub(interceptedChannel);
+        interceptedPerCallBank = intercepted.withOption(MetadataInterceptor.BANK_ID, "gold");
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public HealthCheckResponse plainCall() {
+        return plain.healthCheck(REQUEST);
+    }
+
+    @Benchmark
+    public HealthCheckResponse interceptedCall() {
+        return intercepted.healthCheck(REQUEST);
+    }
+
+    @Benchmark
+    public HealthCheckResponse interceptedPerCallBankCall() {
+        return interceptedPerCallBank.healthCheck(REQUEST);
+    }
+}
@@ -0,0 +1,60 @@
+package io.token.sample.rpc.client;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+import io.token.proto.bankapi.Bankapi.CreateBulkTransferRequest;
+import io.token.proto.bankapi.Bankapi.GetBalanceRequest;
+import io.token.proto.bankapi.Bankapi.TransferRequest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of printing requests as JSON. The {@code new*} variants create a printer per call, as
+ * {@link Main} once did around every RPC; the {@code shared*} variant reuses one, as
+ * {@link RpcLogger} does, and only for the calls it actually logs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonPrintBenchmark {
+    private final JsonFormat.Printer printer = JsonFormat.printer();
+
+    private TransferRequest transfer;
+    private CreateBulkTransferRequest bulkTransfer;
+    private GetBalanceRequest balance;
+
+    @Setup
+    public void setup() {
+        transfer = TestRequests.transferRequest();
+        bulkTransfer = TestRequests.bulkTransferRequest();
+        balance = TestRequests.getBalanceRequest();
+    }
+
+    @Benchmark
+    public String newPrinterTransfer() throws InvalidProtocolBufferException {
+        return JsonFormat.printer().print(transfer);
+    }
+
+    @Benchmark
+    public String newPrinterBulkTransfer() throws InvalidProtocolBufferException {
+        return JsonFormat.printer().print(bulkTransfer);
+    }
+
+    @Benchmark
+    public String newPrinterBalance() throws InvalidProtocolBufferException {
+        return JsonFormat.printer().print(balance);
+    }
+
+    @Benchmark
+    public String sharedPrinterTransfer() throws InvalidProtocolBufferException {
+        return printer.print(transfer);
+    }
+}
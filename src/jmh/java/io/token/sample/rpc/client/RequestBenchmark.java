@@ -0,0 +1,213 @@
+package io.token.sample.rpc.client;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.Codec;
+import io.token.proto.bankapi.Bankapi.CreateBulkTransferRequest;
+import io.token.proto.bankapi.Bankapi.TransferRequest;
+import io.token.proto.common.account.AccountProtos.AccountFeatures;
+import io.token.proto.common.account.AccountProtos.BankAccount;
+import io.token.proto.common.address.AddressProtos;
+import io.token.proto.common.money.MoneyProtos;
+import io.token.proto.common.transferinstructions.TransferInstructionsProtos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Client-side cost of building, serializing, compressing and parsing the {@link TestRequests}
+ * messages. Compression goes through gRPC's own gzip codec, as with {@code --compression=gzip}.
+ *
+ * <p>{@code buildTransferFromScratch} builds the whole sample transfer, every sub-message included,
+ * as each call once did; the {@code build*Variant} benchmarks build a request the way the load does
+ * now, from the shared template with only the per-call fields set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestBenchmark {
+    private static final Codec GZIP = new Codec.Gzip();
+
+    private TransferRequest transfer;
+    private TransferRequest minimalTransfer;
+    private CreateBulkTransferRequest bulkTransfer;
+    private byte[] transferBytes;
+    private byte[] minimalTransferBytes;
+    private byte[] bulkTransferBytes;
+
+    @Setup
+    public void setup() {
+        transfer = TestRequests.transferRequest();
+        minimalTransfer = TestRequests.minimalTransferRequest();
+        bulkTransfer = TestRequests.bulkTransferRequest();
+        transferBytes = transfer.toByteArray();
+        minimalTransferBytes = minimalTransfer.toByteArray();
+        bulkTransferBytes = bulkTransfer.toByteArray();
+    }
+
+    @Benchmark
+    public TransferRequest buildTransferFromScratch() {
+        return TransferRequest.newBuilder()
+                .setTransferId("t:BDJ5Yxhg8UsuH3AJeGbPRrLWGW6eFRfwrjwkUMguKaGh:3VMUBNCZMURCaZw")
+                .setRequestedAmount(gbp("1.9900"))
+                .setTransactionAmount(gbp("1.9900"))
+                .setSource(sourceAccount())
+                .addDestinations(TransferInstructionsProtos.TransferEndpoint.newBuilder()
+                        .setAccount(BankAccount.newBuilder().setFasterPayments(BankAccount.FasterPayments.newBuilder()
+                                .setAccountNumber("12345678")
+                                .setSortCode("123456")
+                                .build()).build())
+                        .setCustomerData(customerData())
+                        .build())
+                .setDescription("southside.com.noverifyQSB4X")
+                .setTokenRefId("ot33poxr5d3ohgb5os")
+                .setMetadata(TransferInstructionsProtos.TransferInstructions.Metadata.newBuilder()
+                        .build())
+                .setTokenInitiatorId("m:test")
+                .addTransferDestinations(transferDestination())
+                .setTransferInstructions(TransferInstructionsProtos.TransferInstructions.newBuilder()
+                        .setSource(TransferInstructionsProtos.TransferEndpoint.newBuilder()
+                                .setAccount(sourceAccount())
+                                .build())
+                        .addTransferDestinations(transferDestination()))
+                .setConsentId("tt:C9JaUJL7AgdfowvhK7KpXxwTkHqLYW119FV6UctsUokC:3VMUBNCZMURCaZw")
+                .setRemittanceReference("abcd1234")
+                .setReturnRefundAccount(true)
+                .build();
+    }
+
+    @Benchmark
+    public TransferRequest buildTransferVariant() {
+        return TestRequests.transferRequest(
+                "t:BDJ5Yxhg8UsuH3AJeGbPRrLWGW6eFRfwrjwkUMguKaGh:3VMUBNCZMURCaZw",
+                "ot33poxr5d3ohgb5os",
+                "2.5000",
+                "tt:C9JaUJL7AgdfowvhK7KpXxwTkHqLYW119FV6UctsUokC:3VMUBNCZMURCaZw");
+    }
+
+    @Benchmark
+    public TransferRequest buildMinimalTransferVariant() {
+        return TestRequests.minimalTransferRequest(
+                "t:9zdwiPVSTfyetJJx58CGA5juDfjmKeyjEC7V2SQBJZtH:3VMUBNCZMURCaZw",
+                "ot33poxr5d3ohgb5os",
+                "2.5000",
+                "tt:C9JaUJL7AgdfowvhK7KpXxwTkHqLYW119FV6UctsUokC:3VMUBNCZMURCaZw");
+    }
+
+    @Benchmark
+    public byte[] serializeTransfer() {
+        return transfer.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serializeMinimalTransfer() {
+        return minimalTransfer.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serializeBulkTransfer() {
+        return bulkTransfer.toByteArray();
+    }
+
+    @Benchmark
+    public TransferRequest parseTransfer() throws InvalidProtocolBufferException {
+        return TransferRequest.parseFrom(transferBytes);
+    }
+
+    @Benchmark
+    public TransferRequest parseMinimalTransfer() throws InvalidProtocolBufferException {
+        return TransferRequest.parseFrom(minimalTransferBytes);
+    }
+
+    @Benchmark
+    public CreateBulkTransferRequest parseBulkTransfer() throws InvalidProtocolBufferException {
+        return CreateBulkTransferRequest.parseFrom(bulkTransferBytes);
+    }
+
+    @Benchmark
+    public int gzipTransfer() throws IOException {
+        return gzip(transferBytes);
+    }
+
+    @Benchmark
+    public int gzipMinimalTransfer() throws IOException {
+        return gzip(minimalTransferBytes);
+    }
+
+    @Benchmark
+    public int gzipBulkTransfer() throws IOException {
+        return gzip(bulkTransferBytes);
+    }
+
+    private static MoneyProtos.Money gbp(String value) {
+        return MoneyProtos.Money.newBuilder()
+                .setCurrency("GBP")
+                .setValue(value)
+                .build();
+    }
+
+    private static BankAccount sourceAccount() {
+        return BankAccount.newBuilder()
+                .setAccountFeatures(AccountFeatures.newBuilder()
+                        .setSupportsInformation(true)
+                        .setSupportsSendPayment(true)
+                        .setSupportsReceivePayment(true)
+                        .build())
+                .setCustom(BankAccount.Custom.newBuilder()
+                        .setPayload("KrOojigVsGkuaSL12P37mLW/CBOSXsnAVOMe6qKkaM8=|m:2X7zH9tFewVRPNQvqHUNycmShdb6:5zKtXEAq")
+                        .setBankId("coop-sit2")
+                        .build())
+                .build();
+    }
+
+    private static TransferInstructionsProtos.TransferDestination transferDestination() {
+        return TransferInstructionsProtos.TransferDestination.newBuilder()
+                .setFasterPayments(TransferInstructionsProtos.TransferDestination.FasterPayments.newBuilder()
+                        .setAccountNumber("12345678")
+                        .setSortCode("123456")
+                        .build())
+                .setCustomerData(customerData())
+                .build();
+    }
+
+    private static TransferInstructionsProtos.CustomerData customerData() {
+        return TransferInstructionsProtos.CustomerData.newBuilder()
+                .addLegalNames("Southside")
+                .setAddress(AddressProtos.Address.newBuilder()
+                        .setHouseNumber("10")
+                        .setHouseName("xyz")
+                        .setFlats("1")
+                        .setConscriptionNumber("1")
+                        .setStreet("Test Street")
+                        .setPlace("15 Testgate")
+                        .setPostCode("WC1B 2EB")
+                        .setCity("London")
+                        .setCountry("GB")
+                        .setFull("10 John Street, London WC1N")
+                        .setHamlet("xyz")
+                        .setSuburb("xyc")
+                        .setSubdistrict("xyz")
+                        .setDistrict("London")
+                        .setProvince("xyz")
+                        .setState("UK")
+                        .build())
+                .build();
+    }
+
+    private static int gzip(byte[] message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.length);
+        try (OutputStream out = GZIP.compress(bytes)) {
+            out.write(message);
+        }
+        return bytes.size();
+    }
+}
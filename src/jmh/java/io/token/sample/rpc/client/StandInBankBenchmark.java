@@ -0,0 +1,64 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.ManagedChannel;
+import io.token.proto.bankapi.AccountServiceGrpc;
+import io.token.proto.bankapi.AccountServiceGrpc.AccountServiceBlockingStub;
+import io.token.proto.bankapi.Bankapi.GetBalanceResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A blocking {@code GetBalance} through the client's full channel stack, against a zero-latency
+ * {@link StandInBank} served in-process or on loopback. The in-process figure is the client's own
+ * cost; the difference to loopback is the transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StandInBankBenchmark {
+    @Param({"in-process", "loopback"})
+    public String server;
+
+    private StandInBank bank;
+    private ClientTransport transport;
+    private ManagedChannel channel;
+    private AccountServiceBlockingStub accounts;
+
+    @Setup
+    public void setup() throws Exception {
+        Args options = Args.parse(new String[] {"--plaintext"});
+        bank = StandInBank.fromArgs(options);
+        String target;
+        if (server.equals("loopback")) {
+            target = "localhost:" + bank.startLoopback(0);
+        } else {
+            bank.startInProcess("benchmark");
+            target = Channels.IN_PROCESS + "benchmark";
+        }
+        transport = ClientTransport.fromArgs(options);
+        channel = Channels.open(options, transport, target, "ruby");
+        accounts = AccountServiceGrpc.newBlockingStub(channel);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        transport.close();
+        bank.close();
+    }
+
+    @Benchmark
+    public GetBalanceResponse getBalance() {
+        return accounts.getBalance(TestRequests.getBalanceRequest());
+    }
+}
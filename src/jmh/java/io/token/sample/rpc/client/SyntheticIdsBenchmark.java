@@ -0,0 +1,41 @@
+package io.token.sample.rpc.client;
+
+import io.token.proto.bankapi.Bankapi.TransferRequest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Cost of {@link SyntheticIds}: a single id, and a whole transfer request with new ids, with one
+ * generator per benchmark thread as the load runners use them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class SyntheticIdsBenchmark {
+    private SyntheticIds ids;
+
+    @Setup
+    public void setup() {
+        ids = new SyntheticIds(42, (int) Thread.currentThread().getId());
+    }
+
+    @Benchmark
+    public String transferId() {
+        return ids.transferId();
+    }
+
+    @Benchmark
+    public TransferRequest transferRequest() {
+        return TestRequests.transferRequest(ids.transferId(), ids.refId(), ids.amount(), ids.tokenId());
+    }
+}
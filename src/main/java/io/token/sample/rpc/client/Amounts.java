@@ -0,0 +1,69 @@
+package io.token.sample.rpc.client;
+
+/**
+ * Exact arithmetic on decimal amount strings such as {@code "1.99"} or {@code "1.9900"}, using
+ * {@code long} ten-thousandths instead of {@link java.math.BigDecimal}.
+ */
+final class Amounts {
+    /** Number of decimal places kept. */
+    static final int SCALE = 4;
+    private static final long ONE = 10_000L;
+
+    private Amounts() {
+    }
+
+    /**
+     * @return {@code amount} in ten-thousandths, e.g. 19900 for {@code "1.99"}
+     * @throws NumberFormatException if the amount is malformed or has more than {@link #SCALE} decimals
+     */
+    static long parse(String amount) {
+        int length = amount.length();
+        if (length == 0) {
+            throw new NumberFormatException("Empty amount");
+        }
+        int i = 0;
+        boolean negative = amount.charAt(0) == '-';
+        if (negative) {
+            i++;
+        }
+        long units = 0;
+        int decimals = -1;
+        for (; i < length; i++) {
+            char c = amount.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (decimals >= 0 && ++decimals > SCALE) {
+                    throw new NumberFormatException("More than " + SCALE + " decimals: " + amount);
+                }
+                units = Math.addExact(Math.multiplyExact(units, 10), c - '0');
+            } else {
+                throw new NumberFormatException("Not an amount: " + amount);
+            }
+        }
+        for (int d = Math.max(decimals, 0); d < SCALE; d++) {
+            units = Math.multiplyExact(units, 10);
+        }
+        return negative ? -units : units;
+    }
+
+    /**
+     * Formats ten-thousandths with two decimals, or four if the last two are not zero.
+     */
+    static String format(long units) {
+        StringBuilder sb = new StringBuilder(24);
+        if (units < 0) {
+            sb.append('-');
+            units = -units;
+        }
+        sb.append(units / ONE).append('.');
+        long fraction = units % ONE;
+        if (fraction % 100 == 0) {
+            long cents = fraction / 100;
+            sb.append(cents < 10 ? "0" : "").append(cents);
+        } else {
+            sb.append(fraction < 1000 ? "0" : "").append(fraction < 100 ? "0" : "").append(fraction < 10 ? "0" : "").append(fraction);
+        }
+        return sb.toString();
+    }
+}
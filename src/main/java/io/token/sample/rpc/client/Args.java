@@ -0,0 +1,100 @@
+package io.token.sample.rpc.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal command-line parser. Positional arguments keep their original meaning
+ * ({@code <bankId> <target>}), options are given as {@code --name} or {@code --name=value}.
+ */
+final class Args {
+    private final List<String> positional = new ArrayList<>();
+    private final Map<String, String> options = new HashMap<>();
+
+    private Args() {
+    }
+
+    static Args parse(String[] args) {
+        Args parsed = new Args();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    parsed.options.put(arg.substring(2), "true");
+                } else {
+                    parsed.options.put(arg.substring(2, eq), arg.substring(eq + 1));
+                }
+            } else {
+                parsed.positional.add(arg);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Returns a copy with option {@code name} set to {@code value}.
+     */
+    Args with(String name, String value) {
+        Args copy = new Args();
+        copy.positional.addAll(positional);
+        copy.options.putAll(options);
+        copy.options.put(name, value);
+        return copy;
+    }
+
+    String positional(int index, String defaultValue) {
+        return index < positional.size() ? positional.get(index) : defaultValue;
+    }
+
+    boolean has(String name) {
+        return options.containsKey(name);
+    }
+
+    String get(String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    int getInt(String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    long getLong(String name, long defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    double getDouble(String name, double defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    /**
+     * Parses a duration such as {@code 500ms}, {@code 30s}, {@code 5m} or {@code 2h}.
+     * A bare number is taken as seconds.
+     *
+     * @return the duration in nanoseconds
+     */
+    long getDurationNanos(String name, long defaultNanos) {
+        String value = options.get(name);
+        return value == null ? defaultNanos : parseDurationNanos(value);
+    }
+
+    static long parseDurationNanos(String value) {
+        String v = value.trim().toLowerCase();
+        if (v.endsWith("ms")) {
+            return TimeUnit.MILLISECONDS.toNanos(Long.parseLong(v.substring(0, v.length() - 2)));
+        } else if (v.endsWith("s")) {
+            return TimeUnit.SECONDS.toNanos(Long.parseLong(v.substring(0, v.length() - 1)));
+        } else if (v.endsWith("m")) {
+            return TimeUnit.MINUTES.toNanos(Long.parseLong(v.substring(0, v.length() - 1)));
+        } else if (v.endsWith("h")) {
+            return TimeUnit.HOURS.toNanos(Long.parseLong(v.substring(0, v.length() - 1)));
+        }
+        return TimeUnit.SECONDS.toNanos(Long.parseLong(v));
+    }
+}
@@ -0,0 +1,36 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.Channel;
+import io.token.proto.bankapi.AccountServiceGrpc;
+import io.token.proto.bankapi.AccountServiceGrpc.AccountServiceBlockingStub;
+import io.token.proto.bankapi.AccountServiceGrpc.AccountServiceStub;
+import io.token.proto.bankapi.HealthCheckServiceGrpc;
+import io.token.proto.bankapi.HealthCheckServiceGrpc.HealthCheckServiceBlockingStub;
+import io.token.proto.bankapi.HealthCheckServiceGrpc.HealthCheckServiceStub;
+import io.token.proto.bankapi.TransferServiceGrpc;
+import io.token.proto.bankapi.TransferServiceGrpc.TransferServiceBlockingStub;
+import io.token.proto.bankapi.TransferServiceGrpc.TransferServiceStub;
+
+/**
+ * The Bank API stubs of a single channel, shared by all workers of a run.
+ * Stubs are thread-safe, so one instance is enough regardless of the number of workers.
+ */
+final class BankStubs {
+    final String bankId;
+    final HealthCheckServiceBlockingStub healthCheck;
+    final TransferServiceBlockingStub transfers;
+    final AccountServiceBlockingStub accounts;
+    final HealthCheckServiceStub healthCheckAsync;
+    final TransferServiceStub transfersAsync;
+    final AccountServiceStub accountsAsync;
+
+    BankStubs(Channel channel, String bankId) {
+        this.bankId = bankId;
+        this.healthCheck = HealthCheckServiceGrpc.newBlockingStub(channel);
+        this.transfers = TransferServiceGrpc.newBlockingStub(channel);
+        this.accounts = AccountServiceGrpc.newBlockingStub(channel);
+        this.healthCheckAsync = HealthCheckServiceGrpc.newStub(channel);
+        this.transfersAsync = TransferServiceGrpc.newStub(channel);
+        this.accountsAsync = AccountServiceGrpc.newStub(channel);
+    }
+}
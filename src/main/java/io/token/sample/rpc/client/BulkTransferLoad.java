@@ -0,0 +1,185 @@
+package io.token.sample.rpc.client;
+
+import com.google.protobuf.CodedOutputStream;
+import io.grpc.stub.StreamObserver;
+import io.token.proto.bankapi.Bankapi.CreateBulkTransferRequest;
+import io.token.proto.bankapi.Bankapi.CreateBulkTransferResponse;
+import io.token.proto.common.token.TokenProtos.BulkTransferBody;
+import io.token.proto.common.token.TokenProtos.BulkTransferBody.Transfer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Submits a large batch of transfers, e.g. a payroll file, as several {@code CreateBulkTransfer}
+ * calls. The batch is split into chunks of at most {@code --chunk-size} transfers that also fit in
+ * {@code --max-message-size} bytes, and up to {@code --max-in-flight-chunks} chunks are submitted
+ * at once.
+ *
+ * <p>Transfers are either generated ({@code --bulk-transfers=N}, default 10000) or read from a CSV
+ * file ({@code --bulk-file=PATH}) with lines {@code amount,sortCode,accountNumber,legalName}.
+ * Chunk ids are {@code <base id>:<chunk index>}; with {@code --unique-ids} the base id is generated
+ * for each run, so that the bank does not take a repeated run for a resubmission.
+ */
+final class BulkTransferLoad {
+    private static final Logger logger = LoggerFactory.getLogger(BulkTransferLoad.class);
+
+    private static final String CHUNK = Operation.CREATE_BULK_TRANSFER.methodName;
+    /** Room left in each chunk for the request fields around the transfers. */
+    private static final int HEADROOM_BYTES = 1024;
+
+    private final int chunkSize;
+    private final int maxMessageSize;
+    private final int maxInFlightChunks;
+    /** Generates the base id of the chunks, or {@code null} to use the sample's. */
+    private final SyntheticIds ids;
+
+    BulkTransferLoad(int chunkSize, int maxMessageSize, int maxInFlightChunks, SyntheticIds ids) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("--chunk-size must be at least 1: " + chunkSize);
+        }
+        int baseSize = TestRequests.bulkTransferRequest().getSerializedSize() + HEADROOM_BYTES;
+        if (maxMessageSize <= baseSize) {
+            throw new IllegalArgumentException("--max-message-size must be above " + baseSize
+                    + " bytes, the request without its transfers and some headroom: " + maxMessageSize);
+        }
+        this.chunkSize = chunkSize;
+        this.maxMessageSize = maxMessageSize;
+        this.maxInFlightChunks = maxInFlightChunks;
+        this.ids = ids;
+    }
+
+    static BulkTransferLoad fromArgs(Args args) {
+        return new BulkTransferLoad(
+                args.getInt("chunk-size", 1000),
+                args.getInt("max-message-size", 4 * 1024 * 1024),
+                args.getInt("max-in-flight-chunks", 4),
+                SyntheticIds.fromArgs(args, 0));
+    }
+
+    static List<Transfer> transfers(Args args) throws IOException {
+        String file = args.get("bulk-file", null);
+        return file != null ? load(file) : generate(args.getInt("bulk-transfers", 10_000));
+    }
+
+    /**
+     * Generates {@code count} transfers of 1.00 to 100.99 to the sample destination.
+     */
+    static List<Transfer> generate(int count) {
+        List<Transfer> transfers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long amount = (100 + i % 10_000) * 100L;
+            transfers.add(TestRequests.bulkTransfer(Integer.toString(i), Amounts.format(amount)));
+        }
+        return transfers;
+    }
+
+    static List<Transfer> load(String path) throws IOException {
+        List<Transfer> transfers = new ArrayList<>();
+        int line = 0;
+        for (String row : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            line++;
+            if (row.trim().isEmpty() || row.startsWith("#")) {
+                continue;
+            }
+            String[] fields = row.split(",", 4);
+            if (fields.length != 4) {
+                throw new IllegalArgumentException("Line " + line + ": expected amount,sortCode,accountNumber,legalName");
+            }
+            transfers.add(TestRequests.bulkTransfer(
+                    Integer.toString(line), fields[0].trim(), fields[1].trim(), fields[2].trim(), fields[3].trim()));
+        }
+        return transfers;
+    }
+
+    /**
+     * Splits {@code transfers} into requests that respect both the chunk size and the message size
+     * limit. Each chunk gets its own bulk transfer id and total amount.
+     */
+    List<CreateBulkTransferRequest> chunk(List<Transfer> transfers) {
+        String baseId = ids == null ? TestRequests.bulkTransferRequest().getTokenBulkTransferId() : ids.bulkTransferId();
+        int budget = maxMessageSize - TestRequests.bulkTransferRequest().getSerializedSize() - HEADROOM_BYTES;
+        List<CreateBulkTransferRequest> chunks = new ArrayList<>();
+        List<Transfer> current = new ArrayList<>(Math.min(chunkSize, transfers.size()));
+        long currentTotal = 0;
+        int currentBytes = 0;
+        for (Transfer transfer : transfers) {
+            int size = CodedOutputStream.computeMessageSize(BulkTransferBody.TRANSFERS_FIELD_NUMBER, transfer);
+            if (size > budget) {
+                throw new IllegalArgumentException("Transfer " + transfer.getRefId() + " alone exceeds the message size limit");
+            }
+            if (current.size() == chunkSize || currentBytes + size > budget) {
+                chunks.add(TestRequests.bulkTransferRequest(baseId + ":" + chunks.size(), current, Amounts.format(currentTotal)));
+                current = new ArrayList<>(current.size());
+                currentTotal = 0;
+                currentBytes = 0;
+            }
+            current.add(transfer);
+            currentTotal = Math.addExact(currentTotal, Amounts.parse(transfer.getAmount()));
+            currentBytes += size;
+        }
+        if (!current.isEmpty()) {
+            chunks.add(TestRequests.bulkTransferRequest(baseId + ":" + chunks.size(), current, Amounts.format(currentTotal)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Submits all chunks, waits for them and returns the per-chunk latencies.
+     */
+    LatencyStats run(BankStubs stubs, List<Transfer> transfers) throws InterruptedException {
+        List<CreateBulkTransferRequest> chunks = chunk(transfers);
+        logger.warn("Submitting {} transfers in {} chunks, {} at a time", transfers.size(), chunks.size(), maxInFlightChunks);
+
+        LatencyStats stats = new LatencyStats();
+        AtomicLong submitted = new AtomicLong();
+        Semaphore inFlight = new Semaphore(maxInFlightChunks);
+        for (CreateBulkTransferRequest chunk : chunks) {
+            inFlight.acquire();
+            long start = System.nanoTime();
+            int count = chunk.getPayload().getTransfersCount();
+            stubs.transfersAsync.createBulkTransfer(chunk, new StreamObserver<CreateBulkTransferResponse>() {
+                @Override
+                public void onNext(CreateBulkTransferResponse response) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    stats.record(CHUNK, System.nanoTime() - start, true);
+                    logger.warn("Chunk {} failed: {}", chunk.getTokenBulkTransferId(), t.getMessage());
+                    inFlight.release();
+                }
+
+                @Override
+                public void onCompleted() {
+                    stats.record(CHUNK, System.nanoTime() - start, false);
+                    submitted.addAndGet(count);
+                    inFlight.release();
+                }
+            });
+        }
+        if (!inFlight.tryAcquire(maxInFlightChunks, 5, TimeUnit.MINUTES)) {
+            logger.warn("Chunks still outstanding after 5 minutes");
+        }
+        stats.stop();
+
+        double seconds = stats.elapsedNanos() / 1e9;
+        logger.warn("Bulk transfer finished:\n{}\n{} of {} transfers accepted, {} chunks failed, {} transfers/s end to end",
+                stats.report(stats.elapsedNanos()),
+                submitted.get(),
+                transfers.size(),
+                stats.errors(),
+                String.format("%.1f", submitted.get() / seconds));
+        return stats;
+    }
+}
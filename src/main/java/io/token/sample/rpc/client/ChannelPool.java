@@ -0,0 +1,244 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Spreads calls over several channels to the same target, so traffic is not limited to a single
+ * HTTP/2 connection (and its {@code MAX_CONCURRENT_STREAMS}). Each subchannel is a fully configured
+ * channel, interceptors included.
+ */
+final class ChannelPool extends ManagedChannel {
+    enum Selection {
+        ROUND_ROBIN,
+        LEAST_OUTSTANDING;
+
+        static Selection forName(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final Subchannel[] subchannels;
+    private final Selection selection;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ChannelPool(List<ManagedChannel> channels, Selection selection) {
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("A pool needs at least one channel");
+        }
+        this.subchannels = new Subchannel[channels.size()];
+        for (int i = 0; i < subchannels.length; i++) {
+            subchannels[i] = new Subchannel(channels.get(i));
+        }
+        this.selection = selection;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+        Subchannel subchannel = select();
+        return new CountingCall<>(subchannel, subchannel.channel.newCall(method, callOptions));
+    }
+
+    private Subchannel select() {
+        int start = Math.floorMod(next.getAndIncrement(), subchannels.length);
+        if (selection == Selection.ROUND_ROBIN) {
+            return subchannels[start];
+        }
+        // Scan from the round-robin position so that ties are spread evenly
+        Subchannel best = subchannels[start];
+        for (int i = 1; i < subchannels.length && best.outstanding.get() > 0; i++) {
+            Subchannel candidate = subchannels[(start + i) % subchannels.length];
+            if (candidate.outstanding.get() < best.outstanding.get()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String authority() {
+        return subchannels[0].channel.authority();
+    }
+
+    @Override
+    public ConnectivityState getState(boolean requestConnection) {
+        ConnectivityState state = subchannels[0].channel.getState(requestConnection);
+        for (int i = 1; i < subchannels.length; i++) {
+            ConnectivityState other = subchannels[i].channel.getState(requestConnection);
+            if (other == ConnectivityState.READY) {
+                state = other;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Runs {@code callback} once the aggregate state is no longer {@code source}. Every subchannel
+     * is watched, and one whose change leaves the aggregate as it was is watched again.
+     */
+    @Override
+    public void notifyWhenStateChanged(ConnectivityState source, Runnable callback) {
+        AtomicBoolean notified = new AtomicBoolean();
+        for (Subchannel subchannel : subchannels) {
+            watch(subchannel, subchannel.channel.getState(false), source, callback, notified);
+        }
+    }
+
+    private void watch(Subchannel subchannel, ConnectivityState seen, ConnectivityState source,
+                       Runnable callback, AtomicBoolean notified) {
+        subchannel.channel.notifyWhenStateChanged(seen, () -> {
+            if (notified.get()) {
+                return;
+            }
+            if (getState(false) != source) {
+                if (notified.compareAndSet(false, true)) {
+                    callback.run();
+                }
+            } else {
+                watch(subchannel, subchannel.channel.getState(false), source, callback, notified);
+            }
+        });
+    }
+
+    @Override
+    public ManagedChannel shutdown() {
+        for (Subchannel subchannel : subchannels) {
+            subchannel.channel.shutdown();
+        }
+        return this;
+    }
+
+    @Override
+    public ManagedChannel shutdownNow() {
+        for (Subchannel subchannel : subchannels) {
+            subchannel.channel.shutdownNow();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        for (Subchannel subchannel : subchannels) {
+            if (!subchannel.channel.isShutdown()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        for (Subchannel subchannel : subchannels) {
+            if (!subchannel.channel.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Subchannel subchannel : subchannels) {
+            long remaining = deadline - System.nanoTime();
+            if (!subchannel.channel.awaitTermination(Math.max(remaining, 0), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int size() {
+        return subchannels.length;
+    }
+
+    /**
+     * Per-connection utilisation: calls started, calls outstanding now, peak outstanding calls and
+     * each connection's share of all calls.
+     */
+    String utilisationReport() {
+        long total = 0;
+        for (Subchannel subchannel : subchannels) {
+            total += subchannel.calls.sum();
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-6s %-18s %10s %12s %10s %7s%n",
+                "conn", "state", "calls", "outstanding", "peak", "share"));
+        for (int i = 0; i < subchannels.length; i++) {
+            Subchannel subchannel = subchannels[i];
+            long calls = subchannel.calls.sum();
+            sb.append(String.format("%-6d %-18s %10d %12d %10d %6.1f%%%n",
+                    i,
+                    subchannel.channel.getState(false),
+                    calls,
+                    subchannel.outstanding.get(),
+                    subchannel.peak.get(),
+                    total == 0 ? 0.0 : 100.0 * calls / total));
+        }
+        sb.append(String.format("%d connections, %s selection", subchannels.length, selection));
+        return sb.toString();
+    }
+
+    private static final class Subchannel {
+        final ManagedChannel channel;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        final LongAdder calls = new LongAdder();
+
+        Subchannel(ManagedChannel channel) {
+            this.channel = channel;
+        }
+
+        void started() {
+            calls.increment();
+            int now = outstanding.incrementAndGet();
+            int max = peak.get();
+            while (now > max && !peak.compareAndSet(max, now)) {
+                max = peak.get();
+            }
+        }
+
+        void finished() {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    private static final class CountingCall<ReqT, RespT> extends SimpleForwardingClientCall<ReqT, RespT> {
+        private final Subchannel subchannel;
+
+        CountingCall(Subchannel subchannel, ClientCall<ReqT, RespT> delegate) {
+            super(delegate);
+            this.subchannel = subchannel;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            subchannel.started();
+            try {
+                super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        subchannel.finished();
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            } catch (RuntimeException e) {
+                subchannel.finished();
+                throw e;
+            }
+        }
+    }
+}
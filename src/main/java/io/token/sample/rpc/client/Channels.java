@@ -0,0 +1,172 @@
+package io.token.sample.rpc.client;
+
+import static io.netty.handler.ssl.SslProvider.OPENSSL;
+
+import io.grpc.ClientInterceptor;
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.netty.GrpcSslContexts;
+import io.grpc.netty.NettyChannelBuilder;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.SslContext;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLException;
+
+/**
+ * Builds the channels to the bank.
+ *
+ * <p>Options: {@code --connections=N} (default 1) opens a {@link ChannelPool} of N connections,
+ * {@code --pool-select=round-robin|least-outstanding} (default round-robin) picks how calls are
+ * spread over them. Transport settings come from {@link ClientTransport}. {@code --tls-dir=DIR}
+ * (default {@code config/tls}) holds {@code cert.pem}, {@code key.pem} and {@code trusted-certs.pem};
+ * {@code --plaintext} connects without TLS. Targets starting with {@code in-process:} connect to an
+ * in-process server. Requests are compressed as set by {@link MessageCompression}.
+ * Retries, hedging and deadlines of reads come from {@link ReadPolicy}. Channels start connecting as
+ * soon as they are built.
+ */
+final class Channels {
+    static final String DEFAULT_TLS_DIR = "config/tls";
+    /** Target prefix of an in-process server, e.g. the {@link StandInBank}. */
+    static final String IN_PROCESS = "in-process:";
+
+    private static final long SESSION_CACHE_SIZE = 1024;
+    private static final long SESSION_TIMEOUT_SECONDS = TimeUnit.HOURS.toSeconds(1);
+    private static final Map<File, SslContext> SSL_CONTEXTS = new HashMap<>();
+
+    private Channels() {
+    }
+
+    /**
+     * The client TLS context of {@code tlsDir}, built once per directory and shared by every
+     * connection that uses it. Its OpenSSL session cache lets every connection after the first to a
+     * bank resume the TLS session instead of doing a full handshake.
+     */
+    static synchronized SslContext sslContext(File tlsDir) throws SSLException {
+        File dir = tlsDir.getAbsoluteFile();
+        SslContext context = SSL_CONTEXTS.get(dir);
+        if (context == null) {
+            context = buildSslContext(dir);
+            if (context.sessionContext() instanceof OpenSslSessionContext) {
+                ((OpenSslSessionContext) context.sessionContext()).setSessionCacheEnabled(true);
+            }
+            SSL_CONTEXTS.put(dir, context);
+        }
+        return context;
+    }
+
+    private static SslContext buildSslContext(File tlsDir) throws SSLException {
+        File trustCertCollectionFile = new File(tlsDir, "trusted-certs.pem"); //Banks SSL cert
+
+        //A cert and key for this client, keyCertChainFile must be trusted by the bank
+        File keyCertChainFile = new File(tlsDir, "cert.pem");
+        File keyFile = new File(tlsDir, "key.pem");
+
+        // Add SSL support if required. Add keys and certificates for mTLS
+        return GrpcSslContexts
+                .forClient()
+                .sslProvider(OPENSSL)
+                .keyManager(keyCertChainFile, keyFile)
+                .trustManager(trustCertCollectionFile)
+                .sessionCacheSize(SESSION_CACHE_SIZE)
+                .sessionTimeout(SESSION_TIMEOUT_SECONDS)
+                .build();
+    }
+
+    /**
+     * Waits until {@code channel} is connected, or for at most {@code timeoutNanos}.
+     *
+     * @return whether the channel is ready
+     */
+    static boolean awaitReady(ManagedChannel channel, long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        ConnectivityState state = channel.getState(true);
+        while (state != ConnectivityState.READY && state != ConnectivityState.SHUTDOWN) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            CountDownLatch changed = new CountDownLatch(1);
+            channel.notifyWhenStateChanged(state, changed::countDown);
+            try {
+                if (!changed.await(remaining, TimeUnit.NANOSECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            state = channel.getState(false);
+        }
+        return state == ConnectivityState.READY;
+    }
+
+    /**
+     * @param interceptors applied to every connection in addition to the {@link MetadataInterceptor};
+     *     the last one sees each call first
+     */
+    static ManagedChannel open(Args options, ClientTransport transport, String target, String bankId,
+                               ClientInterceptor... interceptors) throws SSLException {
+        SslContext context = options.has("plaintext") || target.startsWith(IN_PROCESS)
+                ? null
+                : sslContext(new File(options.get("tls-dir", DEFAULT_TLS_DIR)));
+        ReadPolicy reads = ReadPolicy.fromArgs(options);
+        if (reads.needsCalibration()) {
+            ManagedChannel probe = open(transport, target, bankId, context, ReadPolicy.NONE);
+            try {
+                reads = reads.calibrate(new BankStubs(probe, bankId));
+            } finally {
+                probe.shutdownNow();
+            }
+        }
+        MessageCompression compression = MessageCompression.fromArgs(options);
+        if (compression != null) {
+            // Innermost, next to the transport
+            ClientInterceptor[] all = new ClientInterceptor[interceptors.length + 1];
+            all[0] = compression;
+            System.arraycopy(interceptors, 0, all, 1, interceptors.length);
+            interceptors = all;
+        }
+        int connections = options.getInt("connections", 1);
+        if (connections <= 1) {
+            return open(transport, target, bankId, context, reads, interceptors);
+        }
+        List<ManagedChannel> channels = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            channels.add(open(transport, target, bankId, context, reads, interceptors));
+        }
+        return new ChannelPool(channels, ChannelPool.Selection.forName(options.get("pool-select", "round-robin")));
+    }
+
+    /**
+     * @param context {@code null} for plaintext
+     */
+    static ManagedChannel open(ClientTransport transport, String target, String bankId, SslContext context,
+                               ReadPolicy reads, ClientInterceptor... interceptors) {
+        ManagedChannelBuilder<?> builder;
+        if (target.startsWith(IN_PROCESS)) {
+            builder = InProcessChannelBuilder.forName(target.substring(IN_PROCESS.length()));
+        } else {
+            NettyChannelBuilder netty = transport.configure(NettyChannelBuilder.forTarget(target))
+                    .keepAliveTime(50L, TimeUnit.SECONDS);
+            builder = context == null ? netty.usePlaintext() : netty.sslContext(context);
+        }
+        reads.configure(builder);
+        ManagedChannel channel = builder
+                .intercept(new MetadataInterceptor(bankId))
+                .intercept(interceptors)
+                .build();
+        // Connect and handshake now, in the background, instead of on the first call
+        channel.getState(true);
+        return channel;
+    }
+}
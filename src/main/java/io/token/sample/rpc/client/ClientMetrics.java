@@ -0,0 +1,208 @@
+package io.token.sample.rpc.client;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-method call metrics, recorded by {@link #interceptor()} and exposed over JMX (one
+ * {@link MethodMetricsMXBean} per method) and in Prometheus text format ({@link #prometheusText()}).
+ */
+final class ClientMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(ClientMetrics.class);
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentSkipListMap<>();
+    private final boolean jmx;
+    private final List<Supplier<String>> included = new CopyOnWriteArrayList<>();
+
+    ClientMetrics(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    /**
+     * Appends the metrics of another part of the client, e.g. {@link ResponseCache#prometheusText()},
+     * to {@link #prometheusText()}.
+     */
+    void include(Supplier<String> prometheusText) {
+        included.add(prometheusText);
+    }
+
+    ClientInterceptor interceptor() {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                MethodMetrics metrics = forMethod(method);
+                return new MeteredCall<>(metrics, next.newCall(method, callOptions.withStreamTracerFactory(metrics.attemptTracer)));
+            }
+        };
+    }
+
+    MethodMetrics forMethod(MethodDescriptor<?, ?> method) {
+        MethodMetrics metrics = methods.get(method.getFullMethodName());
+        if (metrics == null) {
+            metrics = methods.computeIfAbsent(method.getFullMethodName(), name -> register(method));
+        }
+        return metrics;
+    }
+
+    Iterable<MethodMetrics> methods() {
+        return methods.values();
+    }
+
+    private MethodMetrics register(MethodDescriptor<?, ?> method) {
+        MethodMetrics metrics = new MethodMetrics(method.getFullMethodName());
+        if (jmx) {
+            try {
+                ObjectName name = new ObjectName("io.token.sample.rpc.client:type=ClientMetrics"
+                        + ",service=" + method.getServiceName()
+                        + ",method=" + method.getBareMethodName());
+                if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+                }
+            } catch (JMException e) {
+                logger.warn("Could not register metrics MBean for {}", method.getFullMethodName(), e);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format (version 0.0.4).
+     */
+    String prometheusText() {
+        StringBuilder sb = new StringBuilder();
+        header(sb, "bank_client_calls_total", "counter", "Calls started");
+        for (MethodMetrics m : methods.values()) {
+            sample(sb, "bank_client_calls_total", m, null, m.calls.sum());
+        }
+        header(sb, "bank_client_calls_in_flight", "gauge", "Calls started but not yet completed");
+        for (MethodMetrics m : methods.values()) {
+            sample(sb, "bank_client_calls_in_flight", m, null, m.inFlight.sum());
+        }
+        header(sb, "bank_client_call_status_total", "counter", "Completed calls by gRPC status code");
+        for (MethodMetrics m : methods.values()) {
+            for (Map.Entry<String, Long> code : m.getStatusCodes().entrySet()) {
+                sample(sb, "bank_client_call_status_total", m, "code=\"" + code.getKey() + "\"", code.getValue());
+            }
+        }
+        header(sb, "bank_client_extra_attempts_total", "counter", "Retry and hedge attempts beyond the first");
+        for (MethodMetrics m : methods.values()) {
+            sample(sb, "bank_client_extra_attempts_total", m, null, m.extraAttempts.sum());
+        }
+        header(sb, "bank_client_cancelled_attempts_total", "counter", "Attempts cancelled, mostly losing hedges");
+        for (MethodMetrics m : methods.values()) {
+            sample(sb, "bank_client_cancelled_attempts_total", m, null, m.cancelledAttempts.sum());
+        }
+        header(sb, "bank_client_request_bytes_total", "counter", "Serialized request bytes sent");
+        for (MethodMetrics m : methods.values()) {
+            sample(sb, "bank_client_request_bytes_total", m, null, m.requestBytes.sum());
+        }
+        header(sb, "bank_client_response_bytes_total", "counter", "Serialized response bytes received");
+        for (MethodMetrics m : methods.values()) {
+            sample(sb, "bank_client_response_bytes_total", m, null, m.responseBytes.sum());
+        }
+        header(sb, "bank_client_request_wire_bytes_total", "counter", "Request bytes on the wire, after compression");
+        for (MethodMetrics m : methods.values()) {
+            sample(sb, "bank_client_request_wire_bytes_total", m, null, m.requestWireBytes.sum());
+        }
+        header(sb, "bank_client_response_wire_bytes_total", "counter", "Response bytes on the wire, before decompression");
+        for (MethodMetrics m : methods.values()) {
+            sample(sb, "bank_client_response_wire_bytes_total", m, null, m.responseWireBytes.sum());
+        }
+        header(sb, "bank_client_call_latency_seconds", "histogram", "Call latency from start to close");
+        for (MethodMetrics m : methods.values()) {
+            long cumulative = 0;
+            for (int i = 0; i < MethodMetrics.LATENCY_BUCKETS.length; i++) {
+                cumulative += m.latencyBuckets[i].sum();
+                sample(sb, "bank_client_call_latency_seconds_bucket", m, "le=\"" + MethodMetrics.LATENCY_BUCKETS[i] + "\"", cumulative);
+            }
+            cumulative += m.latencyBuckets[MethodMetrics.LATENCY_BUCKETS.length].sum();
+            sample(sb, "bank_client_call_latency_seconds_bucket", m, "le=\"+Inf\"", cumulative);
+            sb.append("bank_client_call_latency_seconds_sum{method=\"").append(m.fullMethodName).append("\"} ")
+                    .append(m.latencySumNanos.sum() / 1e9).append('\n');
+            sample(sb, "bank_client_call_latency_seconds_count", m, null, cumulative);
+        }
+        for (Supplier<String> text : included) {
+            sb.append(text.get());
+        }
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, MethodMetrics m, String extraLabel, long value) {
+        sb.append(name).append("{method=\"").append(m.fullMethodName).append('"');
+        if (extraLabel != null) {
+            sb.append(',').append(extraLabel);
+        }
+        sb.append("} ").append(value).append('\n');
+    }
+
+    private static long serializedSize(Object message) {
+        // Protobuf memoizes the size, so this is free once the message has been serialized
+        return message instanceof MessageLite ? ((MessageLite) message).getSerializedSize() : 0;
+    }
+
+    private static final class MeteredCall<ReqT, RespT> extends SimpleForwardingClientCall<ReqT, RespT> {
+        private final MethodMetrics metrics;
+
+        MeteredCall(MethodMetrics metrics, ClientCall<ReqT, RespT> delegate) {
+            super(delegate);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            long start = System.nanoTime();
+            metrics.started();
+            try {
+                super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onMessage(RespT message) {
+                        metrics.responseBytes.add(serializedSize(message));
+                        super.onMessage(message);
+                    }
+
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        metrics.finished(status.getCode(), System.nanoTime() - start);
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            } catch (RuntimeException e) {
+                metrics.finished(Status.Code.UNKNOWN, System.nanoTime() - start);
+                throw e;
+            }
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            metrics.requestBytes.add(serializedSize(message));
+            super.sendMessage(message);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.netty.NettyChannelBuilder;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Netty transport settings shared by every channel of a run: one event-loop group, one
+ * application executor and one allocator, however many channels are opened.
+ *
+ * <p>Options:
+ * <ul>
+ *   <li>{@code --transport=auto|epoll|nio} (default auto: native epoll where available, NIO otherwise)
+ *   <li>{@code --event-loop-threads=N} (default 0, Netty's default of twice the number of cores)
+ *   <li>{@code --executor-threads=N} (default 0, gRPC's shared cached pool)
+ *   <li>{@code --executor=virtual}: a new virtual thread per task instead, see {@link VirtualThreads}
+ *   <li>{@code --allocator=default|pooled-direct|pooled-heap|unpooled}
+ *   <li>{@code --flow-control-window=BYTES} (default 0, gRPC's default with auto-tuning)
+ *   <li>{@code --max-inbound-message-size=BYTES} (default 4MB)
+ * </ul>
+ */
+final class ClientTransport implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ClientTransport.class);
+
+    private static final int DEFAULT_MAX_INBOUND_MESSAGE_SIZE = 4 * 1024 * 1024;
+
+    private final String name;
+    private final EventLoopGroup eventLoopGroup;
+    private final Class<? extends Channel> channelType;
+    private final ExecutorService executor;
+    private final ByteBufAllocator allocator;
+    private final int flowControlWindow;
+    private final int maxInboundMessageSize;
+
+    private ClientTransport(String name,
+                            EventLoopGroup eventLoopGroup,
+                            Class<? extends Channel> channelType,
+                            ExecutorService executor,
+                            ByteBufAllocator allocator,
+                            int flowControlWindow,
+                            int maxInboundMessageSize) {
+        this.name = name;
+        this.eventLoopGroup = eventLoopGroup;
+        this.channelType = channelType;
+        this.executor = executor;
+        this.allocator = allocator;
+        this.flowControlWindow = flowControlWindow;
+        this.maxInboundMessageSize = maxInboundMessageSize;
+    }
+
+    static ClientTransport fromArgs(Args args) {
+        String transport = args.get("transport", "auto");
+        int eventLoopThreads = args.getInt("event-loop-threads", 0);
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("bank-client-event-loop", true);
+
+        boolean epoll;
+        switch (transport) {
+            case "auto":
+                epoll = Epoll.isAvailable();
+                break;
+            case "epoll":
+                if (!Epoll.isAvailable()) {
+                    throw new IllegalStateException("Native epoll transport is not available", Epoll.unavailabilityCause());
+                }
+                epoll = true;
+                break;
+            case "nio":
+                epoll = false;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown transport: " + transport);
+        }
+
+        int executorThreads = args.getInt("executor-threads", 0);
+        ExecutorService executor;
+        if (args.get("executor", "default").equals("virtual")) {
+            executor = VirtualThreads.newThreadPerTaskExecutor("bank-client-executor");
+        } else {
+            executor = executorThreads > 0
+                    ? Executors.newFixedThreadPool(executorThreads, new DefaultThreadFactory("bank-client-executor", true))
+                    : null;
+        }
+
+        ClientTransport result = new ClientTransport(
+                epoll ? "epoll" : "nio",
+                epoll ? new EpollEventLoopGroup(eventLoopThreads, threadFactory) : new NioEventLoopGroup(eventLoopThreads, threadFactory),
+                epoll ? EpollSocketChannel.class : NioSocketChannel.class,
+                executor,
+                allocator(args.get("allocator", "default")),
+                args.getInt("flow-control-window", 0),
+                args.getInt("max-inbound-message-size", DEFAULT_MAX_INBOUND_MESSAGE_SIZE));
+        logger.warn("Using {} transport", result.name);
+        return result;
+    }
+
+    private static ByteBufAllocator allocator(String name) {
+        switch (name) {
+            case "default":
+                return null;
+            case "pooled-direct":
+                return new PooledByteBufAllocator(true);
+            case "pooled-heap":
+                return new PooledByteBufAllocator(false);
+            case "unpooled":
+                return new UnpooledByteBufAllocator(true);
+            default:
+                throw new IllegalArgumentException("Unknown allocator: " + name);
+        }
+    }
+
+    NettyChannelBuilder configure(NettyChannelBuilder builder) {
+        builder.eventLoopGroup(eventLoopGroup)
+                .channelType(channelType)
+                .maxInboundMessageSize(maxInboundMessageSize);
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        if (allocator != null) {
+            builder.withOption(ChannelOption.ALLOCATOR, allocator);
+        }
+        if (flowControlWindow > 0) {
+            builder.flowControlWindow(flowControlWindow);
+        }
+        return builder;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * Releases the event loop and executor. Channels using them must be shut down first.
+     */
+    @Override
+    public void close() {
+        eventLoopGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).syncUninterruptibly();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
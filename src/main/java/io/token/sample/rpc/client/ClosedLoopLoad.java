@@ -0,0 +1,123 @@
+package io.token.sample.rpc.client;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Closed-loop load: a fixed number of workers, each issuing its next call as soon as the previous
+ * one returns. Runs until the duration has elapsed or the request budget is used up, whichever
+ * comes first.
+ *
+ * <p>Options: {@code --workers=N} (default 8), {@code --duration=30s}, {@code --requests=N} and
+ * {@code --ops=HealthCheck,GetBalance,...} (default GetBalance,GetAccount,GetTransactions). With
+ * {@code --unique-ids} every transfer gets new ids, each worker from its own {@link SyntheticIds}.
+ * {@code --threads=virtual} runs every worker on its own virtual thread (Java 21), which makes tens
+ * of thousands of workers affordable.
+ */
+final class ClosedLoopLoad {
+    private static final Logger logger = LoggerFactory.getLogger(ClosedLoopLoad.class);
+
+    static final String DEFAULT_OPS = "GetBalance,GetAccount,GetTransactions";
+
+    private final int workers;
+    private final long durationNanos;
+    private final long requests;
+    private final List<Operation> operations;
+    /** {@code --seed} of the generated ids, or {@code null} to send the fixed sample requests. */
+    private final Long seed;
+    private final boolean virtualThreads;
+
+    ClosedLoopLoad(int workers, long durationNanos, long requests, List<Operation> operations, Long seed,
+                   boolean virtualThreads) {
+        this.workers = workers;
+        this.durationNanos = durationNanos;
+        this.requests = requests;
+        this.operations = operations;
+        this.seed = seed;
+        this.virtualThreads = virtualThreads;
+    }
+
+    static ClosedLoopLoad fromArgs(Args args) {
+        return new ClosedLoopLoad(
+                args.getInt("workers", 8),
+                args.getDurationNanos("duration", TimeUnit.SECONDS.toNanos(30)),
+                args.getLong("requests", Long.MAX_VALUE),
+                Operation.parseList(args.get("ops", DEFAULT_OPS)),
+                args.has("unique-ids") ? args.getLong("seed", 0) : null,
+                threads(args.get("threads", "platform")));
+    }
+
+    private static boolean threads(String threads) {
+        switch (threads) {
+            case "platform":
+                return false;
+            case "virtual":
+                return true;
+            default:
+                throw new IllegalArgumentException("Unknown threads: " + threads);
+        }
+    }
+
+    /**
+     * Runs the load and returns the collected statistics once all workers have stopped.
+     */
+    LatencyStats run(BankStubs stubs) throws InterruptedException {
+        return run(stubs, new LatencyStats());
+    }
+
+    /**
+     * @param stats records the calls, e.g. for a {@link SoakMonitor} to read while the load runs
+     */
+    LatencyStats run(BankStubs stubs, LatencyStats stats) throws InterruptedException {
+        logger.warn("Closed-loop load: {} {} workers, {}s, ops {}",
+                workers, virtualThreads ? "virtual" : "platform", TimeUnit.NANOSECONDS.toSeconds(durationNanos), operations);
+        AtomicLong remaining = new AtomicLong(requests);
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+
+        ExecutorService pool = virtualThreads
+                ? VirtualThreads.newThreadPerTaskExecutor("bank-client-worker")
+                : Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < workers; i++) {
+            int offset = i;
+            SyntheticIds ids = seed == null ? null : new SyntheticIds(seed, i);
+            pool.execute(() -> work(stubs, ids, stats, remaining, deadline, offset));
+        }
+        pool.shutdown();
+        while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+            if (System.nanoTime() - deadline > TimeUnit.MINUTES.toNanos(1)) {
+                logger.warn("Workers did not stop within a minute of the deadline, abandoning them");
+                pool.shutdownNow();
+                break;
+            }
+        }
+
+        stats.stop();
+        logger.warn("Load finished:\n{}", stats.report(stats.elapsedNanos()));
+        return stats;
+    }
+
+    private void work(BankStubs stubs, SyntheticIds ids, LatencyStats stats, AtomicLong remaining, long deadline, int offset) {
+        // Workers start at different points of the operation list so the mix is even from the start
+        int next = offset % operations.size();
+        while (System.nanoTime() < deadline && remaining.getAndDecrement() > 0) {
+            Operation operation = operations.get(next);
+            next = (next + 1) % operations.size();
+            long begin = System.nanoTime();
+            boolean failed = false;
+            try {
+                operation.call(stubs, ids);
+            } catch (RuntimeException e) {
+                failed = true;
+                logger.debug("{} failed", operation.methodName, e);
+            }
+            stats.record(operation.methodName, System.nanoTime() - begin, failed);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.token.sample.rpc.client;
+
+/**
+ * JMX view of one adaptive concurrency limit, per method or per bank, see {@link ConcurrencyLimiter}.
+ */
+public interface ConcurrencyLimitMXBean {
+    int getLimit();
+
+    int getInFlight();
+
+    int getQueued();
+
+    /**
+     * @return calls failed by the client without reaching the bank: over the limit with the queue
+     *     full, or queued for too long
+     */
+    long getRejected();
+
+    /**
+     * @return calls the bank answered with {@code RESOURCE_EXHAUSTED}, {@code UNAVAILABLE} or
+     *     {@code DEADLINE_EXCEEDED}, each of which lowers the limit
+     */
+    long getOverloaded();
+}
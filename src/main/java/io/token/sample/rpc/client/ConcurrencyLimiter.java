@@ -0,0 +1,550 @@
+package io.token.sample.rpc.client;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the calls in flight to the bank, per method or per bank ({@code --limit-by=method|bank}),
+ * and adapts each limit to what the bank sustains, so that a slow bank is held at its best
+ * throughput rather than buried in queued calls. Enabled by {@code --limit=aimd|gradient}.
+ *
+ * <p>Both take a tenth off the limit, at most once per round trip, when the bank answers
+ * {@code RESOURCE_EXHAUSTED}, {@code UNAVAILABLE} or {@code DEADLINE_EXCEEDED}. Otherwise, while at
+ * least half of the limit is in use:
+ * <ul>
+ *     <li>{@code aimd} adds one to it per round trip.
+ *     <li>{@code gradient} compares the recent round-trip time with its long-term average: while the
+ *     two agree (within 1.5x) the limit grows by a fifth of its square root per round trip; as calls
+ *     start to queue at the bank it shrinks in proportion, by up to a tenth per round trip.
+ * </ul>
+ *
+ * <p>The limit starts at {@code --limit-initial} (default 20) and stays within {@code --limit-min}
+ * (1) and {@code --limit-max} (1000). A call over the limit fails at once with
+ * {@code RESOURCE_EXHAUSTED}, or with {@code --limit-queue=N} waits in a queue of up to N calls for
+ * at most {@code --limit-queue-timeout} (default 1s) or its deadline. Round trips are timed from
+ * when a call is let through, so time in the queue does not count.
+ *
+ * <p>The {@link #interceptor()} goes outside the metrics and the recorder, which then see only the
+ * calls let through. Limits and rejections are exposed over JMX (one {@link ConcurrencyLimitMXBean}
+ * per method or bank), in {@link #prometheusText()} and in the {@link #report()}.
+ */
+final class ConcurrencyLimiter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    private static final Set<Status.Code> OVERLOAD = EnumSet.of(
+            Status.Code.RESOURCE_EXHAUSTED, Status.Code.UNAVAILABLE, Status.Code.DEADLINE_EXCEEDED);
+
+    private final boolean gradient;
+    private final boolean byBank;
+    private final String bankId;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final long queueTimeoutNanos;
+    private final HashedWheelTimer timer;
+    private final ConcurrentMap<String, Limit> limits = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param algorithm {@code aimd} or {@code gradient}
+     * @param by {@code method} or {@code bank}
+     * @param bankId the bank of calls that do not set {@link MetadataInterceptor#BANK_ID}
+     */
+    ConcurrencyLimiter(String algorithm, String by, String bankId, int initialLimit, int minLimit, int maxLimit,
+                       int maxQueued, long queueTimeoutNanos) {
+        switch (algorithm) {
+            case "aimd":
+            case "gradient":
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown limit: " + algorithm);
+        }
+        switch (by) {
+            case "method":
+            case "bank":
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown limit-by: " + by);
+        }
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Need 1 <= limit-min <= limit-max");
+        }
+        this.gradient = algorithm.equals("gradient");
+        this.byBank = by.equals("bank");
+        this.bankId = bankId;
+        this.initialLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.queueTimeoutNanos = queueTimeoutNanos;
+        this.timer = maxQueued > 0
+                ? new HashedWheelTimer(new DefaultThreadFactory("concurrency-limiter", true), 1, TimeUnit.MILLISECONDS)
+                : null;
+    }
+
+    /**
+     * @return the limiter configured by the {@code --limit} options, or {@code null} if
+     *     {@code --limit} is not given
+     */
+    static ConcurrencyLimiter fromArgs(Args args, String bankId) {
+        if (!args.has("limit")) {
+            return null;
+        }
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(
+                args.get("limit", "gradient"),
+                args.get("limit-by", "method"),
+                bankId,
+                args.getInt("limit-initial", 20),
+                args.getInt("limit-min", 1),
+                args.getInt("limit-max", 1000),
+                args.getInt("limit-queue", 0),
+                args.getDurationNanos("limit-queue-timeout", TimeUnit.SECONDS.toNanos(1)));
+        logger.warn("Limiting concurrency per {} ({}), from {} within [{}, {}], {}",
+                limiter.byBank ? "bank" : "method", limiter.gradient ? "gradient" : "aimd",
+                limiter.initialLimit, limiter.minLimit, limiter.maxLimit,
+                limiter.maxQueued > 0 ? "queueing up to " + limiter.maxQueued + " calls" : "failing fast");
+        return limiter;
+    }
+
+    ClientInterceptor interceptor() {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                return new LimitedCall<>(limit(method, callOptions), method, callOptions, next);
+            }
+        };
+    }
+
+    private Limit limit(MethodDescriptor<?, ?> method, CallOptions callOptions) {
+        String key = method.getFullMethodName();
+        if (byBank) {
+            String callBankId = callOptions.getOption(MetadataInterceptor.BANK_ID);
+            key = callBankId != null ? callBankId : bankId;
+        }
+        Limit limit = limits.get(key);
+        if (limit == null) {
+            Limit created = new Limit(key);
+            limit = limits.putIfAbsent(key, created);
+            if (limit == null) {
+                register(created);
+                limit = created;
+            }
+        }
+        return limit;
+    }
+
+    private void register(Limit limit) {
+        String key = limit.name;
+        try {
+            ObjectName name = new ObjectName("io.token.sample.rpc.client:type=ConcurrencyLimit,"
+                    + (byBank ? "bank=" : "method=") + ObjectName.quote(key));
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(limit, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not register concurrency limit MBean for {}", key, e);
+        }
+    }
+
+    /**
+     * One line per method or bank: the limit now and its range, calls let through, rejected and
+     * answered with an overload status.
+     */
+    String report() {
+        StringBuilder sb = new StringBuilder(String.format("%-50s %7s %15s %10s %10s %10s",
+                byBank ? "bank" : "method", "limit", "range", "admitted", "rejected", "overloaded"));
+        for (Limit limit : limits.values()) {
+            synchronized (limit) {
+                sb.append(String.format("%n%-50s %7d %7d..%-6d %10d %10d %10d", limit.name, limit.getLimit(),
+                        (int) limit.lowest, (int) limit.highest, limit.admitted.sum(),
+                        limit.rejected.sum(), limit.overloaded.sum()));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The limits and counters in Prometheus text format, for {@link ClientMetrics#prometheusText()}.
+     */
+    String prometheusText() {
+        String label = byBank ? "bank" : "method";
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP bank_client_concurrency_limit Current adaptive limit on calls in flight\n");
+        sb.append("# TYPE bank_client_concurrency_limit gauge\n");
+        for (Limit limit : limits.values()) {
+            sample(sb, "bank_client_concurrency_limit", label, limit.name, limit.getLimit());
+        }
+        sb.append("# HELP bank_client_concurrency_queued Calls waiting for the concurrency limit\n");
+        sb.append("# TYPE bank_client_concurrency_queued gauge\n");
+        for (Limit limit : limits.values()) {
+            sample(sb, "bank_client_concurrency_queued", label, limit.name, limit.getQueued());
+        }
+        sb.append("# HELP bank_client_concurrency_rejected_total Calls failed by the client over the concurrency limit\n");
+        sb.append("# TYPE bank_client_concurrency_rejected_total counter\n");
+        for (Limit limit : limits.values()) {
+            sample(sb, "bank_client_concurrency_rejected_total", label, limit.name, limit.rejected.sum());
+        }
+        sb.append("# HELP bank_client_concurrency_overloaded_total Calls answered with an overload status, lowering the limit\n");
+        sb.append("# TYPE bank_client_concurrency_overloaded_total counter\n");
+        for (Limit limit : limits.values()) {
+            sample(sb, "bank_client_concurrency_overloaded_total", label, limit.name, limit.overloaded.sum());
+        }
+        return sb.toString();
+    }
+
+    private static void sample(StringBuilder sb, String metric, String label, String value, long sample) {
+        sb.append(metric).append('{').append(label).append("=\"").append(value).append("\"} ")
+                .append(sample).append('\n');
+    }
+
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    private enum Admission {
+        ADMITTED, QUEUED, REJECTED
+    }
+
+    /**
+     * The limit of one method or bank, and the calls waiting for it.
+     */
+    private final class Limit implements ConcurrencyLimitMXBean {
+        final String name;
+        final LongAdder admitted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder overloaded = new LongAdder();
+
+        // Guarded by this
+        private final ArrayDeque<LimitedCall<?, ?>> queue = new ArrayDeque<>();
+        private double limit = initialLimit;
+        private double lowest = initialLimit;
+        private double highest = initialLimit;
+        private int inFlight;
+        private double shortRttNanos;
+        private double longRttNanos;
+        private long lastBackoffNanos;
+
+        Limit(String name) {
+            this.name = name;
+        }
+
+        synchronized Admission acquire(LimitedCall<?, ?> call) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                admitted.increment();
+                return Admission.ADMITTED;
+            }
+            if (queue.size() < maxQueued) {
+                queue.add(call);
+                return Admission.QUEUED;
+            }
+            rejected.increment();
+            return Admission.REJECTED;
+        }
+
+        /**
+         * @return {@code false} if the call has already left the queue, i.e. it was let through
+         */
+        synchronized boolean dequeue(LimitedCall<?, ?> call) {
+            return queue.remove(call);
+        }
+
+        /**
+         * Ends a call that was let through, adapts the limit to how it went and lets queued calls
+         * through if there is room.
+         *
+         * @param code its status, or {@code null} if it never reached the bank
+         */
+        void release(long rttNanos, Status.Code code) {
+            List<LimitedCall<?, ?>> next = null;
+            synchronized (this) {
+                inFlight--;
+                if (code != null) {
+                    update(rttNanos, OVERLOAD.contains(code));
+                }
+                while (inFlight < (int) limit && !queue.isEmpty()) {
+                    if (next == null) {
+                        next = new ArrayList<>();
+                    }
+                    next.add(queue.poll());
+                    inFlight++;
+                    admitted.increment();
+                }
+            }
+            if (next != null) {
+                for (LimitedCall<?, ?> call : next) {
+                    call.admit();
+                }
+            }
+        }
+
+        /**
+         * @param inUse whether at least half of the limit was in use, else it is the callers, not
+         *     the bank, that hold back the calls and there is no reason to raise it
+         */
+        private void update(long rttNanos, boolean overload) {
+            boolean inUse = 2 * (inFlight + 1) >= limit;
+            if (!overload) {
+                // Fast failures say nothing about the bank's queue
+                shortRttNanos = shortRttNanos == 0 ? rttNanos : shortRttNanos + (rttNanos - shortRttNanos) / 10;
+                longRttNanos = longRttNanos == 0 ? rttNanos : longRttNanos + (rttNanos - longRttNanos) / 100;
+                if (longRttNanos > 2 * shortRttNanos) {
+                    // Recover quickly once a latency spike is over
+                    longRttNanos *= 0.95;
+                }
+            }
+            if (overload) {
+                overloaded.increment();
+                long now = System.nanoTime();
+                if (now - lastBackoffNanos >= Math.max(shortRttNanos, rttNanos)) {
+                    limit *= 0.9;
+                    lastBackoffNanos = now;
+                }
+            } else if (inUse && gradient) {
+                double ratio = Math.max(0.5, Math.min(1.0, 1.5 * longRttNanos / shortRttNanos));
+                double target = limit * ratio + Math.sqrt(limit);
+                // Smoothed: a round trip's worth of calls moves the limit a fifth of the way to the target
+                limit += 0.2 * (target - limit) / limit;
+            } else if (inUse) {
+                limit += 1 / limit;
+            }
+            limit = Math.max(minLimit, Math.min(maxLimit, limit));
+            lowest = Math.min(lowest, limit);
+            highest = Math.max(highest, limit);
+        }
+
+        @Override
+        public synchronized int getLimit() {
+            return (int) limit;
+        }
+
+        @Override
+        public synchronized int getInFlight() {
+            return inFlight;
+        }
+
+        @Override
+        public synchronized int getQueued() {
+            return queue.size();
+        }
+
+        @Override
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        @Override
+        public long getOverloaded() {
+            return overloaded.sum();
+        }
+    }
+
+    /**
+     * A call that starts once its {@link Limit} lets it through; until then what the caller does
+     * with it is kept and replayed in order.
+     */
+    private final class LimitedCall<ReqT, RespT> extends ClientCall<ReqT, RespT> implements TimerTask {
+        private final Limit limit;
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final CallOptions callOptions;
+        private final Channel next;
+        /** Where the listener is called, e.g. the blocking stub's own executor; gRPC requires it. */
+        private final Executor executor;
+        private Listener<RespT> listener;
+
+        // Guarded by this
+        private Metadata headers;
+        private ClientCall<ReqT, RespT> call;
+        private int requested;
+        private final List<ReqT> messages = new ArrayList<>(1);
+        private boolean halfClosed;
+        private Status cancelled;
+        private Timeout timeout;
+
+        LimitedCall(Limit limit, MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+            this.limit = limit;
+            this.method = method;
+            this.callOptions = callOptions;
+            this.next = next;
+            this.executor = callOptions.getExecutor() != null ? callOptions.getExecutor() : MoreExecutors.directExecutor();
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            synchronized (this) {
+                this.listener = responseListener;
+                this.headers = headers;
+            }
+            switch (limit.acquire(this)) {
+                case ADMITTED:
+                    admit();
+                    break;
+                case QUEUED:
+                    long waitNanos = queueTimeoutNanos;
+                    if (callOptions.getDeadline() != null) {
+                        waitNanos = Math.min(waitNanos, callOptions.getDeadline().timeRemaining(TimeUnit.NANOSECONDS));
+                    }
+                    Timeout scheduled = timer.newTimeout(this, Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+                    synchronized (this) {
+                        if (call == null) {
+                            timeout = scheduled;
+                        } else {
+                            scheduled.cancel();
+                        }
+                    }
+                    break;
+                case REJECTED:
+                    fail(Status.RESOURCE_EXHAUSTED.withDescription(
+                            "Client concurrency limit of " + limit.getLimit() + " reached for " + limit.name));
+                    break;
+            }
+        }
+
+        /**
+         * Queued for too long.
+         */
+        @Override
+        public void run(Timeout timeout) {
+            if (limit.dequeue(this)) {
+                limit.rejected.increment();
+                fail(Status.RESOURCE_EXHAUSTED.withDescription(
+                        "Waited too long for the client concurrency limit of " + limit.getLimit() + " for " + limit.name));
+            }
+        }
+
+        /**
+         * Starts the call on the channel and replays what the caller has done with it so far.
+         */
+        synchronized void admit() {
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            ClientCall<ReqT, RespT> admitted = next.newCall(method, callOptions);
+            long start = System.nanoTime();
+            boolean started = false;
+            try {
+                admitted.start(new SimpleForwardingClientCallListener<RespT>(listener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        limit.release(System.nanoTime() - start, status.getCode());
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+                started = true;
+                call = admitted;
+                if (requested > 0) {
+                    admitted.request(requested);
+                }
+                for (ReqT message : messages) {
+                    admitted.sendMessage(message);
+                }
+                messages.clear();
+                if (halfClosed) {
+                    admitted.halfClose();
+                }
+                if (cancelled != null) {
+                    admitted.cancel(cancelled.getDescription(), cancelled.getCause());
+                }
+            } catch (RuntimeException e) {
+                if (started) {
+                    admitted.cancel("Failed to start", e);
+                } else {
+                    limit.release(0, null);
+                    fail(Status.fromThrowable(e));
+                }
+            }
+        }
+
+        @Override
+        public synchronized void request(int numMessages) {
+            if (call != null) {
+                call.request(numMessages);
+            } else {
+                requested += numMessages;
+            }
+        }
+
+        @Override
+        public synchronized void sendMessage(ReqT message) {
+            if (call != null) {
+                call.sendMessage(message);
+            } else {
+                messages.add(message);
+            }
+        }
+
+        @Override
+        public synchronized void halfClose() {
+            if (call != null) {
+                call.halfClose();
+            } else {
+                halfClosed = true;
+            }
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            synchronized (this) {
+                if (call != null) {
+                    call.cancel(message, cause);
+                    return;
+                }
+                // Passed on if it is let through meanwhile
+                cancelled = Status.CANCELLED.withDescription(message).withCause(cause);
+            }
+            if (limit.dequeue(this)) {
+                fail(cancelled);
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            ClientCall<ReqT, RespT> call;
+            synchronized (this) {
+                call = this.call;
+            }
+            return call != null && call.isReady();
+        }
+
+        private void fail(Status status) {
+            Listener<RespT> listener;
+            synchronized (this) {
+                listener = this.listener;
+            }
+            executor.execute(() -> listener.onClose(status, new Metadata()));
+        }
+    }
+}
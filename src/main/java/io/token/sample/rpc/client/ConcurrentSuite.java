@@ -0,0 +1,105 @@
+package io.token.sample.rpc.client;
+
+import com.google.protobuf.MessageOrBuilder;
+import io.grpc.stub.StreamObserver;
+import io.token.proto.bankapi.Bankapi.HealthCheckRequest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The functional checks of {@link Main}, run concurrently on the async stubs ({@code --suite=parallel}),
+ * so the suite takes about as long as its slowest call rather than the sum of all of them.
+ * GetTransferStatus asks for the status of the sample transfer, so it starts once Transfer has
+ * completed; every other check starts at once. Requests and responses are logged as in the
+ * sequential suite, though interleaved.
+ */
+final class ConcurrentSuite {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrentSuite.class);
+
+    private static final int CHECKS = 8;
+
+    private final BankStubs stubs;
+    private final RpcLogger rpcLog;
+    private final AtomicInteger failures;
+    private final CountDownLatch done = new CountDownLatch(CHECKS);
+
+    /**
+     * @param failures incremented once per failed check, from gRPC threads
+     */
+    ConcurrentSuite(BankStubs stubs, RpcLogger rpcLog, AtomicInteger failures) {
+        this.stubs = stubs;
+        this.rpcLog = rpcLog;
+        this.failures = failures;
+    }
+
+    /**
+     * Starts every check and waits for all of them to complete.
+     *
+     * @return whether all checks completed within {@code timeoutNanos}
+     */
+    boolean run(long timeoutNanos) throws InterruptedException {
+        logger.warn("Performing all checks in parallel...");
+        long start = System.nanoTime();
+        check("HealthCheck", HealthCheckRequest.newBuilder().setBankId(stubs.bankId).build(),
+                stubs.healthCheckAsync::healthCheck, null);
+        check("Transfer", TestRequests.transferRequest(), stubs.transfersAsync::transfer,
+                () -> check("GetTransferStatus", TestRequests.getTransferStatusRequest(), stubs.transfersAsync::getTransferStatus, null));
+        check("Transfer", TestRequests.minimalTransferRequest(), stubs.transfersAsync::transfer, null);
+        check("BulkTransfer", TestRequests.bulkTransferRequest(), stubs.transfersAsync::createBulkTransfer, null);
+        check("GetBalance", TestRequests.getBalanceRequest(), stubs.accountsAsync::getBalance, null);
+        check("GetAccount", TestRequests.getAccountRequest(), stubs.accountsAsync::getAccount, null);
+        check("GetTransactions", TestRequests.getTransactionsRequest(), stubs.accountsAsync::getTransactions, null);
+        boolean completed = done.await(timeoutNanos, TimeUnit.NANOSECONDS);
+        logger.warn("{} checks completed in {} ms, {} failed",
+                CHECKS - done.getCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failures.get());
+        return completed;
+    }
+
+    /**
+     * Issues one check; {@code then}, if given, starts once it has completed, whether it passed or not.
+     */
+    private <ReqT extends MessageOrBuilder, RespT extends MessageOrBuilder> void check(
+            String name, ReqT request, BiConsumer<ReqT, StreamObserver<RespT>> call, Runnable then) {
+        boolean sampled = rpcLog.request(request);
+        long start = System.nanoTime();
+        StreamObserver<RespT> observer = new StreamObserver<RespT>() {
+            private RespT response;
+
+            @Override
+            public void onNext(RespT value) {
+                response = value;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                rpcLog.failure(sampled, name, request, t, System.nanoTime() - start);
+                failures.incrementAndGet();
+                completed();
+            }
+
+            @Override
+            public void onCompleted() {
+                rpcLog.response(sampled, request, response, System.nanoTime() - start);
+                completed();
+            }
+
+            private void completed() {
+                done.countDown();
+                if (then != null) {
+                    then.run();
+                }
+            }
+        };
+        try {
+            call.accept(request, observer);
+        } catch (RuntimeException e) {
+            observer.onError(e);
+        }
+    }
+}
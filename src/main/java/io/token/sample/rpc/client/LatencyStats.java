@@ -0,0 +1,150 @@
+package io.token.sample.rpc.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Per-method latency histograms and error counts, safe to record into from any number of threads.
+ * Latencies are recorded in nanoseconds with three significant digits.
+ */
+final class LatencyStats {
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final ConcurrentMap<String, MethodStats> methods = new ConcurrentSkipListMap<>();
+    private final long startNanos = System.nanoTime();
+    private volatile long stopNanos;
+
+    void record(String method, long latencyNanos, boolean failed) {
+        MethodStats stats = forMethod(method);
+        stats.recorder.recordValue(Math.max(latencyNanos, 1L));
+        if (failed) {
+            stats.errors.increment();
+        }
+    }
+
+    MethodStats forMethod(String method) {
+        MethodStats stats = methods.get(method);
+        if (stats == null) {
+            stats = methods.computeIfAbsent(method, m -> new MethodStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Marks the end of the run; {@link #elapsedNanos()} is measured up to here.
+     */
+    void stop() {
+        stopNanos = System.nanoTime();
+    }
+
+    long elapsedNanos() {
+        long stop = stopNanos;
+        return (stop == 0 ? System.nanoTime() : stop) - startNanos;
+    }
+
+    /**
+     * @return the latencies of all methods merged into one histogram
+     */
+    Histogram combined() {
+        Histogram combined = new Histogram(SIGNIFICANT_DIGITS);
+        for (MethodStats stats : methods.values()) {
+            combined.add(stats.snapshot());
+        }
+        return combined;
+    }
+
+    /**
+     * @return the latencies of all methods recorded since the previous call, merged into one
+     *     histogram, for rolling windows over a long run
+     */
+    Histogram window() {
+        Histogram window = new Histogram(SIGNIFICANT_DIGITS);
+        for (MethodStats stats : methods.values()) {
+            window.add(stats.drainWindow());
+        }
+        return window;
+    }
+
+    long errors() {
+        long errors = 0;
+        for (MethodStats stats : methods.values()) {
+            errors += stats.errors.sum();
+        }
+        return errors;
+    }
+
+    /**
+     * Formats a table with throughput and p50/p90/p99/p99.9/max latency in milliseconds for
+     * every method recorded so far.
+     *
+     * @param elapsedNanos wall-clock time of the run, used to compute throughput
+     */
+    String report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-20s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "method", "count", "errors", "rps", "p50", "p90", "p99", "p99.9", "max"));
+        long totalCount = 0;
+        for (Map.Entry<String, MethodStats> entry : methods.entrySet()) {
+            Histogram histogram = entry.getValue().snapshot();
+            long count = histogram.getTotalCount();
+            totalCount += count;
+            sb.append(String.format("%-20s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                    entry.getKey(),
+                    count,
+                    entry.getValue().errors.sum(),
+                    count / seconds,
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue())));
+        }
+        sb.append(String.format("total %d calls in %.1fs (%.1f rps), latencies in ms",
+                totalCount, seconds, totalCount / seconds));
+        return sb.toString();
+    }
+
+    static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    static final class MethodStats {
+        final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+        final LongAdder errors = new LongAdder();
+        private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+        /** Recorded since the previous {@link #drainWindow()}. */
+        private final Histogram window = new Histogram(SIGNIFICANT_DIGITS);
+
+        /**
+         * Folds everything recorded since the previous call into the cumulative histogram and
+         * returns a copy of it.
+         */
+        synchronized Histogram snapshot() {
+            fold();
+            return total.copy();
+        }
+
+        /**
+         * @return everything recorded since the previous call
+         */
+        synchronized Histogram drainWindow() {
+            fold();
+            Histogram drained = window.copy();
+            window.reset();
+            return drained;
+        }
+
+        private void fold() {
+            Histogram interval = recorder.getIntervalHistogram();
+            total.add(interval);
+            window.add(interval);
+        }
+    }
+}
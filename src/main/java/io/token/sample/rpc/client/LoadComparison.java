@@ -0,0 +1,109 @@
+package io.token.sample.rpc.client;
+
+import com.sun.management.OperatingSystemMXBean;
+import io.grpc.ManagedChannel;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the same load once per value of one option and prints the results side by side, e.g.
+ * {@code --compare=transport=nio,epoll} or {@code --compare=allocator=default,pooled-direct}.
+ * Every variant gets its own transport and channels; all other options are shared.
+ * {@code --compare=reads=none,hedge} shows what hedging does to the tail, see {@link ReadPolicy}.
+ * {@code --compare=compression=identity,gzip} or {@code --compare=ops=Transfer,MinimalTransfer} shows
+ * the request bytes on the wire per call against the process CPU time per call, which includes an
+ * in-process or loopback {@link StandInBank}.
+ */
+final class LoadComparison {
+    private static final Logger logger = LoggerFactory.getLogger(LoadComparison.class);
+
+    private LoadComparison() {
+    }
+
+    static void run(Args options, String target, String bankId) throws Exception {
+        String spec = options.get("compare", "");
+        int eq = spec.indexOf('=');
+        if (eq <= 0) {
+            throw new IllegalArgumentException("--compare must look like <option>=<value>,<value>: " + spec);
+        }
+        String option = spec.substring(0, eq);
+        String[] values = spec.substring(eq + 1).split(",");
+
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-20s %10s %8s %10s %9s %9s %9s %9s %8s %8s %9s %8s %8s%n",
+                option, "calls", "errors", "rps", "p50", "p99", "p99.9", "max", "extra", "gc", "gc ms", "req B", "cpu us"));
+        for (String value : values) {
+            Args variant = options.with(option, value.trim());
+            long gcCountBefore = gcCount();
+            long gcTimeBefore = gcMillis();
+            long cpuBefore = cpuNanos();
+            LatencyStats stats;
+            ClientMetrics metrics = new ClientMetrics(false);
+            try (ClientTransport transport = ClientTransport.fromArgs(variant)) {
+                ManagedChannel channel = Channels.open(variant, transport, target, bankId, metrics.interceptor());
+                try {
+                    stats = Main.runLoad(variant, new BankStubs(channel, bankId));
+                } finally {
+                    channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+                }
+            }
+            long cpu = cpuNanos() - cpuBefore;
+            Histogram all = stats.combined();
+            double seconds = stats.elapsedNanos() / 1e9;
+            long extraAttempts = 0;
+            long requestWireBytes = 0;
+            for (MethodMetrics method : metrics.methods()) {
+                extraAttempts += method.extraAttempts.sum();
+                requestWireBytes += method.requestWireBytes.sum();
+            }
+            long calls = Math.max(all.getTotalCount(), 1);
+            table.append(String.format("%-20s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %8d %8d %9d %8d %8.1f%n",
+                    value.trim(),
+                    all.getTotalCount(),
+                    stats.errors(),
+                    all.getTotalCount() / seconds,
+                    LatencyStats.millis(all.getValueAtPercentile(50)),
+                    LatencyStats.millis(all.getValueAtPercentile(99)),
+                    LatencyStats.millis(all.getValueAtPercentile(99.9)),
+                    LatencyStats.millis(all.getMaxValue()),
+                    extraAttempts,
+                    gcCount() - gcCountBefore,
+                    gcMillis() - gcTimeBefore,
+                    requestWireBytes / calls,
+                    cpu / 1e3 / calls));
+        }
+        table.append("latencies in ms over all methods, extra = retry and hedge attempts, "
+                + "req B = request bytes on the wire per call, cpu us = process CPU time per call");
+        logger.warn("Comparison of {}:\n{}", option, table);
+    }
+
+    /**
+     * @return CPU time of the whole process, or 0 if the JVM does not report it
+     */
+    static long cpuNanos() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        return os instanceof OperatingSystemMXBean ? Math.max(((OperatingSystemMXBean) os).getProcessCpuTime(), 0) : 0;
+    }
+
+    static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    static long gcMillis() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(gc.getCollectionTime(), 0);
+        }
+        return time;
+    }
+}
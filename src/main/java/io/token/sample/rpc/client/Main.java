@@ -1,14 +1,9 @@
 package io.token.sample.rpc.client;
 
-import static io.netty.handler.ssl.SslProvider.OPENSSL;
-
-import com.google.protobuf.InvalidProtocolBufferException;
-import com.google.protobuf.util.JsonFormat;
+import io.grpc.ClientInterceptor;
 import io.grpc.ManagedChannel;
 import io.grpc.Status;
-import io.grpc.netty.GrpcSslContexts;
-import io.grpc.netty.NettyChannelBuilder;
-import io.netty.handler.ssl.SslContext;
+import io.grpc.stub.StreamObserver;
 import io.token.proto.bankapi.AccountServiceGrpc;
 import io.token.proto.bankapi.AccountServiceGrpc.AccountServiceBlockingStub;
 import io.token.proto.bankapi.Bankapi.CreateBulkTransferRequest;
@@ -30,8 +25,12 @@ import io.token.proto.bankapi.HealthCheckServiceGrpc.HealthCheckServiceBlockingS
 import io.token.proto.bankapi.TransferServiceGrpc;
 import io.token.proto.bankapi.TransferServiceGrpc.TransferServiceBlockingStub;
 
-import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,110 +41,350 @@ public class Main {
     // Replace with corresponding values for your bank
     static String bankId = "ruby";
     static String target = "localhost:9300";
-    static int failedRequests = 0;
+    static final AtomicInteger failedRequests = new AtomicInteger();
     
-    private static final String OUT = "--> OUT: \n{}";
-    private static final String IN = "<-- IN: \n{}";
+    static RpcLogger rpcLog = new RpcLogger(1, Long.MAX_VALUE);
+
+    /** Started when the JVM loads this class, just before {@code main}. */
+    static final StartupTimer startup = new StartupTimer();
 
     public static void main(String[] args) throws Exception {
-        if (args.length > 0) {
-            bankId = args[0];
-            if (args.length > 1) {
-                target = args[1];
+        Args options = Args.parse(args);
+        bankId = options.positional(0, bankId);
+        target = options.positional(1, target);
+        rpcLog = RpcLogger.fromArgs(options);
+        options = SyntheticIds.withSeed(options);
+
+        if (options.has("profile-payloads")) {
+            logger.warn("Request sizes:\n{}", PayloadProfile.fromArgs(options).report());
+            return;
+        }
+
+        if (options.has("serve")) {
+            try (StandInBank bank = StandInBank.fromArgs(options)) {
+                bank.startLoopback(options.getInt("serve", 9300));
+                bank.awaitTermination();
             }
+            return;
         }
 
-        File trustCertCollectionFile = new File("config/tls/trusted-certs.pem"); //Banks SSL cert
+        if (!options.has("stand-in")) {
+            run(options);
+            return;
+        }
+        try (StandInBank bank = StandInBank.fromArgs(options)) {
+            if (options.get("stand-in", "in-process").equals("loopback")) {
+                target = "localhost:" + bank.startLoopback(0);
+                options = options.with("plaintext", "true");
+            } else {
+                bank.startInProcess("stand-in");
+                target = Channels.IN_PROCESS + "stand-in";
+            }
+            run(options);
+        }
+    }
 
-        //A cert and key for this client, keyCertChainFile must be trusted by the bank
-        File keyCertChainFile = new File("config/tls/cert.pem");
-        File keyFile = new File("config/tls/key.pem");
+    static void run(Args options) throws Exception {
+        if (options.has("targets")) {
+            int failedBanks = MultiBankRunner.run(options);
+            if (failedBanks > 0) {
+                throw Status.INTERNAL.withDescription(failedBanks + " banks failed!").asRuntimeException();
+            }
+            return;
+        }
 
-        // Add SSL support if required. Add keys and certificates for mTLS
-        SslContext context = GrpcSslContexts
-                .forClient()
-                .sslProvider(OPENSSL)
-                .keyManager(keyCertChainFile, keyFile)
-                .trustManager(trustCertCollectionFile)
-                .build();
+        if (options.has("compare")) {
+            LoadComparison.run(options, target, bankId);
+            return;
+        }
 
-        logger.warn("Opening channel to {}", bankId);
-        ManagedChannel channel = NettyChannelBuilder
-                .forTarget(target)
-                .intercept(new MetadataInterceptor(bankId))
-                .sslContext(context)
-                .keepAliveTime(50L, TimeUnit.SECONDS)
-                .build();
+        List<ClientInterceptor> interceptors = new ArrayList<>();
+        interceptors.add(startup.interceptor());
+        MetricsExporter metricsExporter = null;
+        ClientMetrics metrics = null;
+        if (options.has("metrics")) {
+            metrics = new ClientMetrics(true);
+            interceptors.add(metrics.interceptor());
+            metricsExporter = MetricsExporter.start(metrics, options);
+        }
+        TrafficRecorder recorder = null;
+        if (options.has("record")) {
+            recorder = TrafficRecorder.fromArgs(options);
+            interceptors.add(recorder.interceptor());
+        }
+        SoakMonitor soak = SoakMonitor.fromArgs(options);
+        if (soak != null) {
+            interceptors.add(soak.interceptor());
+        }
+        // Outside the metrics and the recorder too, and inside the cache so that hits take no permit
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.fromArgs(options, bankId);
+        if (limiter != null) {
+            interceptors.add(limiter.interceptor());
+            if (metrics != null) {
+                metrics.include(limiter::prometheusText);
+            }
+        }
+        // Outermost, so that the metrics and the recorder only see calls that reach the bank
+        ResponseCache cache = ResponseCache.fromArgs(options, bankId);
+        if (cache != null) {
+            interceptors.add(cache.interceptor());
+            if (metrics != null) {
+                metrics.include(cache::prometheusText);
+            }
+        }
 
-        logger.warn("Connected to {}", target);
+        startup.mark("setup");
+
+        logger.warn("Opening channel to {}", bankId);
+        ClientTransport transport = ClientTransport.fromArgs(options);
+        ManagedChannel channel = Channels.open(options, transport, target, bankId,
+                interceptors.toArray(new ClientInterceptor[0]));
+        startup.mark("channel and TLS context");
+
+        // Create clients for various services supported by the Bank API
+        // Here are a few examples. Actual services are configured on a case-by-case basis.
+        // They are created, and the test requests loaded, while the channel connects.
+        HealthCheckServiceBlockingStub healthCheckService = HealthCheckServiceGrpc.newBlockingStub(channel);
+        TransferServiceBlockingStub transferService = TransferServiceGrpc.newBlockingStub(channel);
+        AccountServiceBlockingStub accountService = AccountServiceGrpc.newBlockingStub(channel);
+        TestRequests.transferRequest();
+        startup.mark("stubs and requests");
+
+        if (Channels.awaitReady(channel, options.getDurationNanos("connect-timeout", TimeUnit.SECONDS.toNanos(10)))) {
+            logger.warn("Connected to {}", target);
+        } else {
+            logger.warn("Not connected to {} yet, continuing", target);
+        }
+        startup.mark("connect (rest of)");
 
         try {
-            // Create clients for various services supported by the Bank API
-            // Here are a few examples. Actual services are configured on a case-by-case basis.
-            HealthCheckServiceBlockingStub healthCheckService = HealthCheckServiceGrpc.newBlockingStub(channel);
-            TransferServiceBlockingStub transferService = TransferServiceGrpc.newBlockingStub(channel);
-            AccountServiceBlockingStub accountService = AccountServiceGrpc.newBlockingStub(channel);
-
-            testHealthCheck(healthCheckService);
-            testTransfer(transferService);
-            testGetTransferStatus(transferService);
-            testStripedTransfer(transferService);
-            testBulkTransfer(transferService);
-            testGetBalance(accountService);
-            testGetAccount(accountService);
-            testGetTransactions(accountService);
+            if (soak != null) {
+                try (SoakMonitor monitor = soak) {
+                    runLoad(SoakMonitor.loadOptions(options), new BankStubs(channel, bankId), monitor.start());
+                }
+                return;
+            }
+
+            if (options.has("load")) {
+                runLoad(options, new BankStubs(channel, bankId));
+                if (channel instanceof ChannelPool) {
+                    logger.warn("Connection utilisation:\n{}", ((ChannelPool) channel).utilisationReport());
+                }
+                return;
+            }
+
+            if (options.has("transactions")) {
+                readAllTransactions(options, new BankStubs(channel, bankId));
+                return;
+            }
+
+            if (options.has("scenario")) {
+                long errors = Scenario.load(options, bankId).run(channel);
+                if (errors > 0) {
+                    throw Status.INTERNAL.withDescription(errors + " scenario calls failed!").asRuntimeException();
+                }
+                return;
+            }
+
+            if (options.has("replay")) {
+                LatencyStats stats = TrafficReplayer.fromArgs(options).run(channel);
+                if (stats.errors() > 0) {
+                    throw Status.INTERNAL.withDescription(stats.errors() + " replayed calls failed!").asRuntimeException();
+                }
+                return;
+            }
+
+            if (options.has("track-transfers")) {
+                int failed = trackTransfers(options, new BankStubs(channel, bankId));
+                if (failed > 0) {
+                    throw Status.INTERNAL.withDescription(failed + " transfers failed or did not settle!").asRuntimeException();
+                }
+                return;
+            }
+
+            if (options.has("bulk")) {
+                LatencyStats stats = BulkTransferLoad.fromArgs(options)
+                        .run(new BankStubs(channel, bankId), BulkTransferLoad.transfers(options));
+                if (stats.errors() > 0) {
+                    throw Status.INTERNAL.withDescription(stats.errors() + " bulk transfer chunks failed!").asRuntimeException();
+                }
+                return;
+            }
+
+            if (options.get("suite", "sequential").equals("parallel")) {
+                ConcurrentSuite suite = new ConcurrentSuite(new BankStubs(channel, bankId), rpcLog, failedRequests);
+                if (!suite.run(options.getDurationNanos("deadline", TimeUnit.SECONDS.toNanos(30)))) {
+                    throw Status.DEADLINE_EXCEEDED.withDescription("Checks still running after the deadline").asRuntimeException();
+                }
+            } else {
+                testHealthCheck(healthCheckService);
+                testTransfer(transferService);
+                testGetTransferStatus(transferService);
+                testStripedTransfer(transferService);
+                testBulkTransfer(transferService);
+                testGetBalance(accountService);
+                testGetAccount(accountService);
+                testGetTransactions(accountService);
+            }
 
         } finally {
             channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            transport.close();
+            if (metricsExporter != null) {
+                metricsExporter.close();
+            }
+            if (recorder != null) {
+                recorder.close();
+            }
+            if (cache != null) {
+                logger.warn("Response cache:\n{}", cache.report());
+            }
+            if (limiter != null) {
+                limiter.close();
+                logger.warn("Concurrency limits:\n{}", limiter.report());
+            }
         }
 
-        if (failedRequests > 0) {
-            throw Status.INTERNAL.withDescription("There were " + failedRequests + " failed requests!").asRuntimeException();
+        if (failedRequests.get() > 0) {
+            throw Status.INTERNAL.withDescription("There were " + failedRequests.get() + " failed requests!").asRuntimeException();
+        }
+    }
+
+    /**
+     * {@code --load} (or {@code --load=closed}) runs a closed-loop load, {@code --load=open} an
+     * open-loop, fixed-rate one.
+     */
+    static LatencyStats runLoad(Args options, BankStubs stubs) throws InterruptedException {
+        return runLoad(options, stubs, new LatencyStats());
+    }
+
+    static LatencyStats runLoad(Args options, BankStubs stubs, LatencyStats stats) throws InterruptedException {
+        String mode = options.get("load", "closed");
+        switch (mode) {
+            case "true":
+            case "closed":
+                return ClosedLoopLoad.fromArgs(options).run(stubs, stats);
+            case "open":
+                return OpenLoopLoad.fromArgs(options).run(stubs, stats);
+            default:
+                throw new IllegalArgumentException("Unknown load mode: " + mode);
+        }
+    }
+
+    /**
+     * Walks the full transaction history of the test account with a prefetching
+     * {@link TransactionStream}: {@code --page-size=N} (default 100), {@code --prefetch=N} (default 2).
+     */
+    static void readAllTransactions(Args options, BankStubs stubs) {
+        logger.warn("Reading all transactions...");
+        try (TransactionStream transactions = new TransactionStream(
+                stubs.accountsAsync,
+                TestRequests.getTransactionsRequest(),
+                options.getInt("page-size", 100),
+                options.getInt("prefetch", 2))) {
+            while (transactions.hasNext()) {
+                transactions.next();
+            }
+            logger.warn("Read {}", transactions.stats());
+        }
+    }
+
+    /**
+     * Sends {@code --track-transfers=N} transfers and polls each with a {@link TransferStatusPoller}
+     * until it settles, then prints the time-to-settlement table.
+     *
+     * @return the number of transfers that failed, were rejected or did not settle
+     */
+    static int trackTransfers(Args options, BankStubs stubs) throws InterruptedException {
+        int count = options.getInt("track-transfers", 100);
+        logger.warn("Sending {} transfers and tracking them until they settle...", count);
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch settled = new CountDownLatch(count);
+        Semaphore inFlight = new Semaphore(options.getInt("max-in-flight", 64));
+        // Transfers must be new to the bank to be tracked to settlement, so ids are always generated
+        SyntheticIds ids = new SyntheticIds(options.getLong("seed", System.nanoTime()), 0);
+        try (TransferStatusPoller poller = TransferStatusPoller.fromArgs(options, stubs.transfersAsync)) {
+            for (int i = 0; i < count; i++) {
+                String transferId = ids.transferId();
+                TransferRequest request = TestRequests.transferRequest(transferId, ids.refId(), ids.amount(), ids.tokenId());
+                inFlight.acquire();
+                stubs.transfersAsync.transfer(request, new StreamObserver<TransferResponse>() {
+                    @Override
+                    public void onNext(TransferResponse response) {
+                        poller.track(transferId, response.getTransactionId()).whenComplete((status, error) -> {
+                            if (error != null || !poller.isSuccess(status)) {
+                                failed.incrementAndGet();
+                            }
+                            settled.countDown();
+                        });
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        inFlight.release();
+                        failed.incrementAndGet();
+                        settled.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        inFlight.release();
+                    }
+                });
+            }
+            settled.await();
+            poller.settlement().stop();
+            logger.warn("Time to settlement by final status, {} polls:\n{}",
+                    poller.polls(), poller.settlement().report(poller.settlement().elapsedNanos()));
         }
+        return failed.get();
     }
 
-    static void testHealthCheck(HealthCheckServiceBlockingStub healthCheckService) throws InvalidProtocolBufferException {
+    static void testHealthCheck(HealthCheckServiceBlockingStub healthCheckService) {
         logger.warn("Performing HealthCheck...");
         // We will be using the Health Check service in this example
         HealthCheckRequest request = HealthCheckRequest.newBuilder()
                 .setBankId(bankId)
                 .build();
 
-        logger.warn(OUT, JsonFormat.printer().print(request));
+        boolean sampled = rpcLog.request(request);
+        long start = System.nanoTime();
         try {
             HealthCheckResponse response = healthCheckService.healthCheck(request);
-            logger.warn(IN, JsonFormat.printer().print(response));
+            rpcLog.response(sampled, request, response, System.nanoTime() - start);
         } catch (Exception e) {
-            logger.error("HealthCheck failed", e);
-            failedRequests++;
+            rpcLog.failure(sampled, "HealthCheck", request, e, System.nanoTime() - start);
+            failedRequests.incrementAndGet();
         }
     }
 
-    static void testTransfer(TransferServiceBlockingStub transferService) throws InvalidProtocolBufferException {
+    static void testTransfer(TransferServiceBlockingStub transferService) {
         logger.warn("Performing Transfer...");
         TransferRequest transferRequest = TestRequests.transferRequest();
 
-        logger.warn(OUT, JsonFormat.printer().print(transferRequest));
+        boolean sampled = rpcLog.request(transferRequest);
+        long start = System.nanoTime();
         try {
             TransferResponse transferResponse = transferService.transfer(transferRequest);
-            logger.warn(IN, JsonFormat.printer().print(transferResponse));
+            rpcLog.response(sampled, transferRequest, transferResponse, System.nanoTime() - start);
         } catch (Exception e) {
-            logger.error("Transfer failed", e);
-            failedRequests++;
+            rpcLog.failure(sampled, "Transfer", transferRequest, e, System.nanoTime() - start);
+            failedRequests.incrementAndGet();
         }
     }
 
-    private static void testGetTransferStatus(TransferServiceBlockingStub transferService) throws InvalidProtocolBufferException {
+    private static void testGetTransferStatus(TransferServiceBlockingStub transferService) {
         logger.warn("Performing GetTransferStatus...");
         GetTransferStatusRequest getTransferStatusRequest = TestRequests.getTransferStatusRequest();
 
-        logger.warn(OUT, JsonFormat.printer().print(getTransferStatusRequest));
+        boolean sampled = rpcLog.request(getTransferStatusRequest);
+        long start = System.nanoTime();
         try {
             GetTransferStatusResponse getTransferStatusResponse = transferService.getTransferStatus(getTransferStatusRequest);
-            logger.warn(IN, JsonFormat.printer().print(getTransferStatusResponse));
+            rpcLog.response(sampled, getTransferStatusRequest, getTransferStatusResponse, System.nanoTime() - start);
         } catch (Exception e) {
-            logger.error("GetTransferStatus failed", e);
-            failedRequests++;
+            rpcLog.failure(sampled, "GetTransferStatus", getTransferStatusRequest, e, System.nanoTime() - start);
+            failedRequests.incrementAndGet();
         }
     }
 
@@ -153,35 +392,37 @@ public class Main {
      * This will work if the Bank Integration SDK has been implemented with the latest SDK,
      * if the implementation uses depreciated code then you will need to include duplicate data
      */
-    static void testStripedTransfer(TransferServiceBlockingStub transferService) throws InvalidProtocolBufferException {
+    static void testStripedTransfer(TransferServiceBlockingStub transferService) {
         logger.warn("Performing Transfer...");
         TransferRequest transferRequest = TestRequests.minimalTransferRequest();
 
-        logger.warn(OUT, JsonFormat.printer().print(transferRequest));
+        boolean sampled = rpcLog.request(transferRequest);
+        long start = System.nanoTime();
         try {
             TransferResponse transferResponse = transferService.transfer(transferRequest);
-            logger.warn(IN, JsonFormat.printer().print(transferResponse));
+            rpcLog.response(sampled, transferRequest, transferResponse, System.nanoTime() - start);
         } catch (Exception e) {
-            logger.error("Transfer failed", e);
-            failedRequests++;
+            rpcLog.failure(sampled, "Transfer", transferRequest, e, System.nanoTime() - start);
+            failedRequests.incrementAndGet();
         }
     }
 
-    static void testBulkTransfer(TransferServiceBlockingStub transferService) throws InvalidProtocolBufferException {
+    static void testBulkTransfer(TransferServiceBlockingStub transferService) {
         logger.warn("Performing BulkTransfer...");
         CreateBulkTransferRequest bulkTransferRequest = TestRequests.bulkTransferRequest();
 
-        logger.warn(OUT, JsonFormat.printer().print(bulkTransferRequest));
+        boolean sampled = rpcLog.request(bulkTransferRequest);
+        long start = System.nanoTime();
         try {
             CreateBulkTransferResponse bulkTransferResponse = transferService.createBulkTransfer(bulkTransferRequest);
-            logger.warn(IN, JsonFormat.printer().print(bulkTransferResponse));
+            rpcLog.response(sampled, bulkTransferRequest, bulkTransferResponse, System.nanoTime() - start);
         } catch (Exception e) {
-            logger.error("BulkTransfer failed", e);
-            failedRequests++;
+            rpcLog.failure(sampled, "BulkTransfer", bulkTransferRequest, e, System.nanoTime() - start);
+            failedRequests.incrementAndGet();
         }
     }
 
-    static void testGetBalance(AccountServiceBlockingStub accounts) throws InvalidProtocolBufferException {
+    static void testGetBalance(AccountServiceBlockingStub accounts) {
         logger.warn("\nPerforming GetBalance...");
 
         /* A GetBalanceRequest has 2 possible fields: consentId and account
@@ -193,43 +434,46 @@ public class Main {
          */
         GetBalanceRequest getBalanceRequest = TestRequests.getBalanceRequest();
 
-        logger.warn(OUT, JsonFormat.printer().print(getBalanceRequest));
+        boolean sampled = rpcLog.request(getBalanceRequest);
+        long start = System.nanoTime();
         try {
             GetBalanceResponse getBalanceResponse = accounts.getBalance(getBalanceRequest);
-            logger.warn(IN, JsonFormat.printer().print(getBalanceResponse));
+            rpcLog.response(sampled, getBalanceRequest, getBalanceResponse, System.nanoTime() - start);
         } catch (Exception e) {
-            logger.error("GetBalance failed", e);
-            failedRequests++;
+            rpcLog.failure(sampled, "GetBalance", getBalanceRequest, e, System.nanoTime() - start);
+            failedRequests.incrementAndGet();
         }
     }
 
 
-    static void testGetAccount(AccountServiceBlockingStub accounts) throws InvalidProtocolBufferException {
+    static void testGetAccount(AccountServiceBlockingStub accounts) {
         logger.warn("Performing GetAccount...");
 
         GetAccountRequest getAccountRequest = TestRequests.getAccountRequest();
 
-        logger.warn(OUT, JsonFormat.printer().print(getAccountRequest));
+        boolean sampled = rpcLog.request(getAccountRequest);
+        long start = System.nanoTime();
         try {
             GetAccountResponse getAccountResponse = accounts.getAccount(getAccountRequest);
-            logger.warn(IN, JsonFormat.printer().print(getAccountResponse));
+            rpcLog.response(sampled, getAccountRequest, getAccountResponse, System.nanoTime() - start);
         } catch (Exception e) {
-            logger.error("GetAccount failed", e);
-            failedRequests++;
+            rpcLog.failure(sampled, "GetAccount", getAccountRequest, e, System.nanoTime() - start);
+            failedRequests.incrementAndGet();
         }
     }
 
-    static void testGetTransactions(AccountServiceBlockingStub accounts) throws InvalidProtocolBufferException {
+    static void testGetTransactions(AccountServiceBlockingStub accounts) {
         logger.warn("Performing GetTransactions...");
         GetTransactionsRequest getTransactionsRequest = TestRequests.getTransactionsRequest();
 
-        logger.warn(OUT, JsonFormat.printer().print(getTransactionsRequest));
+        boolean sampled = rpcLog.request(getTransactionsRequest);
+        long start = System.nanoTime();
         try {
             GetTransactionsResponse getTransactionsResponse = accounts.getTransactions(getTransactionsRequest);
-            logger.warn(IN, JsonFormat.printer().print(getTransactionsResponse));
+            rpcLog.response(sampled, getTransactionsRequest, getTransactionsResponse, System.nanoTime() - start);
         } catch (Exception e) {
-            logger.error("GetTransactions failed", e);
-            failedRequests++;
+            rpcLog.failure(sampled, "GetTransactions", getTransactionsRequest, e, System.nanoTime() - start);
+            failedRequests.incrementAndGet();
         }
     }
 
@@ -0,0 +1,80 @@
+package io.token.sample.rpc.client;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.MethodDescriptor;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compresses request messages, {@code --compression=gzip|identity} (default identity, i.e. none).
+ * {@code --compression-methods=Transfer,CreateBulkTransfer} compresses only the requests of those
+ * methods (default all), and requests smaller than {@code --compression-min-bytes} (default 0) are
+ * sent uncompressed, as gzip's header and trailer alone take 18 bytes. Responses are compressed
+ * only if the bank chooses to; the client accepts gzip either way.
+ *
+ * <p>The wire bytes each call takes after compression are counted by {@link ClientMetrics}.
+ */
+final class MessageCompression implements ClientInterceptor {
+    private final String compressor;
+    /** Bare method names, or {@code null} for all. */
+    private final Set<String> methods;
+    private final int minBytes;
+
+    MessageCompression(String compressor, Set<String> methods, int minBytes) {
+        if (!compressor.equals("gzip") && !compressor.equals("identity")) {
+            throw new IllegalArgumentException("Unknown compression: " + compressor);
+        }
+        this.compressor = compressor;
+        this.methods = methods;
+        this.minBytes = minBytes;
+    }
+
+    /**
+     * @return the interceptor configured by {@code --compression}, or {@code null} if requests are
+     *     not to be compressed
+     */
+    static MessageCompression fromArgs(Args args) {
+        String compressor = args.get("compression", "identity");
+        String methods = args.get("compression-methods", null);
+        MessageCompression compression = new MessageCompression(
+                compressor,
+                methods == null ? null : new HashSet<>(Arrays.asList(methods.split(","))),
+                args.getInt("compression-min-bytes", 0));
+        // Validated either way, so that a typo does not silently mean no compression
+        return compressor.equals("identity") ? null : compression;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        if (methods != null && !methods.contains(method.getBareMethodName())) {
+            return next.newCall(method, callOptions);
+        }
+        ClientCall<ReqT, RespT> call = next.newCall(method, callOptions.withCompression(compressor));
+        if (minBytes <= 0) {
+            return call;
+        }
+        return new SimpleForwardingClientCall<ReqT, RespT>(call) {
+            @Override
+            public void sendMessage(ReqT message) {
+                if (message instanceof MessageLite) {
+                    // The size is memoized, so serializing the message later costs nothing extra
+                    setMessageCompression(((MessageLite) message).getSerializedSize() >= minBytes);
+                }
+                super.sendMessage(message);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return compressor + (methods == null ? "" : " for " + methods)
+                + (minBytes > 0 ? ", from " + minBytes + " bytes" : "");
+    }
+}
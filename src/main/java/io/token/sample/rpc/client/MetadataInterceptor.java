@@ -18,9 +18,20 @@ import org.slf4j.LoggerFactory;
 public class MetadataInterceptor implements ClientInterceptor {
     private static final Logger logger = LoggerFactory.getLogger(MetadataInterceptor.class);
 
-    private final Metadata.Key<String> tokenBankIdKey = Metadata.Key.of("token-bank-id", ASCII_STRING_MARSHALLER);
+    private static final Metadata.Key<String> tokenBankIdKey = Metadata.Key.of("token-bank-id", ASCII_STRING_MARSHALLER);
+
+    /**
+     * Overrides the interceptor's bank id for a single call, so one channel can serve many banks:
+     * {@code stub.withOption(MetadataInterceptor.BANK_ID, "ruby")}.
+     */
+    public static final CallOptions.Key<String> BANK_ID = CallOptions.Key.create("token-bank-id");
+
     private final String bankId;
 
+    /**
+     * @param bankId the bank id sent with every call that does not set {@link #BANK_ID}, may be
+     *     {@code null} if every call sets it
+     */
     public MetadataInterceptor(String bankId) {
         this.bankId = bankId;
     }
@@ -36,6 +47,9 @@ public class MetadataInterceptor implements ClientInterceptor {
      * other than the current {@code Context}. The outcome of such usage is undefined and may cause
      * memory leak due to unbounded chain of {@code Context}s.
      *
+     * <p>The only per-call allocation is the call wrapper that adds the header; the response
+     * listener is only wrapped while debug logging of response headers is enabled.
+     *
      * @param method      the remote method to be called.
      * @param callOptions the runtime options to be applied to this call.
      * @param next        the channel which is being intercepted.
@@ -43,24 +57,41 @@ public class MetadataInterceptor implements ClientInterceptor {
      */
     @Override
     public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
-        return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+        String callBankId = callOptions.getOption(BANK_ID);
+        return new BankIdCall<>(next.newCall(method, callOptions), callBankId != null ? callBankId : bankId);
+    }
 
-            @Override
-            public void start(Listener<RespT> responseListener, Metadata headers) {
-                headers.put(tokenBankIdKey, bankId);
-                super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
-                    @Override
-                    public void onHeaders(Metadata headers) {
+    private static final class BankIdCall<ReqT, RespT> extends SimpleForwardingClientCall<ReqT, RespT> {
+        private final String bankId;
+
+        BankIdCall(ClientCall<ReqT, RespT> delegate, String bankId) {
+            super(delegate);
+            this.bankId = bankId;
+        }
 
-                        /* If you don't need to receive headers from the server,
-                         * you can use {@link io.grpc.stub.MetadataUtils#attachHeaders}
-                         * directly to send header
-                         */
-                        logger.debug("Headers received from server: {}", headers);
-                        super.onHeaders(headers);
-                    }
-                }, headers);
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            if (bankId != null) {
+                headers.put(tokenBankIdKey, bankId);
             }
-        };
+            super.start(logger.isDebugEnabled() ? new HeaderLoggingListener<>(responseListener) : responseListener, headers);
+        }
+    }
+
+    private static final class HeaderLoggingListener<RespT> extends SimpleForwardingClientCallListener<RespT> {
+        HeaderLoggingListener(ClientCall.Listener<RespT> delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void onHeaders(Metadata headers) {
+
+            /* If you don't need to receive headers from the server,
+             * you can use {@link io.grpc.stub.MetadataUtils#attachHeaders}
+             * directly to send header
+             */
+            logger.debug("Headers received from server: {}", headers);
+            super.onHeaders(headers);
+        }
     }
 }
@@ -0,0 +1,167 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.ClientStreamTracer;
+import io.grpc.Metadata;
+import io.grpc.Status;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side metrics of one RPC method. All counters are {@link LongAdder}s, which stripe
+ * updates across cells under contention, so recording never serializes the calling threads.
+ */
+final class MethodMetrics implements MethodMetricsMXBean {
+    /** Upper bounds of the latency histogram buckets, in seconds. */
+    static final double[] LATENCY_BUCKETS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final long[] LATENCY_BUCKET_NANOS = new long[LATENCY_BUCKETS.length];
+    private static final Status.Code[] CODES = Status.Code.values();
+
+    static {
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            LATENCY_BUCKET_NANOS[i] = (long) (LATENCY_BUCKETS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    final String fullMethodName;
+    final LongAdder calls = new LongAdder();
+    final LongAdder inFlight = new LongAdder();
+    final LongAdder requestBytes = new LongAdder();
+    final LongAdder responseBytes = new LongAdder();
+    /** Bytes of the messages as sent, after compression and over every attempt, without framing. */
+    final LongAdder requestWireBytes = new LongAdder();
+    final LongAdder responseWireBytes = new LongAdder();
+    final LongAdder latencySumNanos = new LongAdder();
+    /** Retry and hedge attempts beyond the first; transparent retries are not counted. */
+    final LongAdder extraAttempts = new LongAdder();
+    /** Attempts that ended {@code CANCELLED}, mostly hedges that lost to another attempt. */
+    final LongAdder cancelledAttempts = new LongAdder();
+    /** Non-cumulative bucket counts; the last cell counts calls slower than every bound. */
+    final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS.length + 1];
+    final LongAdder[] statusCodes = new LongAdder[CODES.length];
+    /** Counts the attempts of each call; installed on the call options by {@link ClientMetrics}. */
+    final ClientStreamTracer.Factory attemptTracer = new ClientStreamTracer.Factory() {
+        private final ClientStreamTracer tracer = new ClientStreamTracer() {
+            @Override
+            public void outboundWireSize(long bytes) {
+                requestWireBytes.add(bytes);
+            }
+
+            @Override
+            public void inboundWireSize(long bytes) {
+                responseWireBytes.add(bytes);
+            }
+
+            @Override
+            public void streamClosed(Status status) {
+                if (status.getCode() == Status.Code.CANCELLED) {
+                    cancelledAttempts.increment();
+                }
+            }
+        };
+
+        @Override
+        public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers) {
+            if (info.getPreviousAttempts() > 0 && !info.isTransparentRetry()) {
+                extraAttempts.increment();
+            }
+            return tracer;
+        }
+    };
+
+    MethodMetrics(String fullMethodName) {
+        this.fullMethodName = fullMethodName;
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+        for (int i = 0; i < statusCodes.length; i++) {
+            statusCodes[i] = new LongAdder();
+        }
+    }
+
+    void started() {
+        calls.increment();
+        inFlight.increment();
+    }
+
+    void finished(Status.Code code, long latencyNanos) {
+        inFlight.decrement();
+        statusCodes[code.ordinal()].increment();
+        latencySumNanos.add(latencyNanos);
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKET_NANOS.length && latencyNanos > LATENCY_BUCKET_NANOS[bucket]) {
+            bucket++;
+        }
+        latencyBuckets[bucket].increment();
+    }
+
+    long completed() {
+        long completed = 0;
+        for (LongAdder count : statusCodes) {
+            completed += count.sum();
+        }
+        return completed;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getRequestBytes() {
+        return requestBytes.sum();
+    }
+
+    @Override
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    @Override
+    public long getRequestWireBytes() {
+        return requestWireBytes.sum();
+    }
+
+    @Override
+    public long getResponseWireBytes() {
+        return responseWireBytes.sum();
+    }
+
+    @Override
+    public long getExtraAttempts() {
+        return extraAttempts.sum();
+    }
+
+    @Override
+    public long getCancelledAttempts() {
+        return cancelledAttempts.sum();
+    }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        long completed = completed();
+        return completed == 0 ? 0 : latencySumNanos.sum() / 1e6 / completed;
+    }
+
+    @Override
+    public Map<String, Long> getStatusCodes() {
+        Map<String, Long> codes = new LinkedHashMap<>();
+        for (Status.Code code : CODES) {
+            long count = statusCodes[code.ordinal()].sum();
+            if (count > 0) {
+                codes.put(code.name(), count);
+            }
+        }
+        return codes;
+    }
+}
@@ -0,0 +1,37 @@
+package io.token.sample.rpc.client;
+
+import java.util.Map;
+
+/**
+ * JMX view of the client-side metrics of one RPC method, see {@link ClientMetrics}.
+ */
+public interface MethodMetricsMXBean {
+    long getCalls();
+
+    long getInFlight();
+
+    long getRequestBytes();
+
+    long getResponseBytes();
+
+    /**
+     * @return request bytes on the wire, after {@link MessageCompression}
+     */
+    long getRequestWireBytes();
+
+    long getResponseWireBytes();
+
+    /**
+     * @return retry and hedge attempts beyond the first, see {@link ReadPolicy}
+     */
+    long getExtraAttempts();
+
+    long getCancelledAttempts();
+
+    double getMeanLatencyMillis();
+
+    /**
+     * @return completed calls by gRPC status code, e.g. {@code OK} or {@code UNAVAILABLE}
+     */
+    Map<String, Long> getStatusCodes();
+}
@@ -0,0 +1,97 @@
+package io.token.sample.rpc.client;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes {@link ClientMetrics} in Prometheus text format: over HTTP at {@code /metrics}
+ * ({@code --metrics-port=N}) and/or as a file rewritten every 10 seconds and on close
+ * ({@code --metrics-file=PATH}, for the node exporter's textfile collector).
+ */
+final class MetricsExporter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+
+    private final ClientMetrics metrics;
+    private final HttpServer server;
+    private final Path file;
+    private final ScheduledExecutorService scheduler;
+
+    private MetricsExporter(ClientMetrics metrics, HttpServer server, Path file, ScheduledExecutorService scheduler) {
+        this.metrics = metrics;
+        this.server = server;
+        this.file = file;
+        this.scheduler = scheduler;
+    }
+
+    static MetricsExporter start(ClientMetrics metrics, Args args) throws IOException {
+        HttpServer server = null;
+        int port = args.getInt("metrics-port", 0);
+        if (port > 0) {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = metrics.prometheusText().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            logger.warn("Serving metrics on http://localhost:{}/metrics", port);
+        }
+
+        Path file = null;
+        ScheduledExecutorService scheduler = null;
+        String path = args.get("metrics-file", null);
+        if (path != null) {
+            file = Paths.get(path);
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "metrics-file-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        MetricsExporter exporter = new MetricsExporter(metrics, server, file, scheduler);
+        if (scheduler != null) {
+            scheduler.scheduleAtFixedRate(exporter::writeFile, 10, 10, TimeUnit.SECONDS);
+        }
+        return exporter;
+    }
+
+    private void writeFile() {
+        try {
+            // Write aside and move, so readers never see a half-written file
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, metrics.prometheusText().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not write metrics to {}", file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            writeFile();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+}
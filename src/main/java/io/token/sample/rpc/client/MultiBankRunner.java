@@ -0,0 +1,174 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the functional suite, or a load profile when {@code --load} is given, against every bank in
+ * a targets file, several banks at a time, from one JVM. All banks share one {@link ClientTransport}.
+ *
+ * <p>The targets file ({@code --targets=PATH}) has one bank per line: {@code <bankId> <target> [tlsDir]},
+ * where {@code tlsDir} defaults to {@code --tls-dir}. Blank lines and lines starting with {@code #} are
+ * ignored. {@code --parallel=N} (default 8) bounds how many banks run at once and {@code --deadline=T}
+ * (default 30s) bounds every call, so one unresponsive bank cannot hold a slot forever.
+ */
+final class MultiBankRunner {
+    private static final Logger logger = LoggerFactory.getLogger(MultiBankRunner.class);
+
+    private MultiBankRunner() {
+    }
+
+    static final class BankTarget {
+        final String bankId;
+        final String target;
+        final String tlsDir;
+
+        BankTarget(String bankId, String target, String tlsDir) {
+            this.bankId = bankId;
+            this.target = target;
+            this.tlsDir = tlsDir;
+        }
+    }
+
+    static List<BankTarget> readTargets(String path, String defaultTlsDir) throws IOException {
+        List<BankTarget> targets = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] fields = trimmed.split("[\\s,]+");
+            if (fields.length < 2) {
+                throw new IllegalArgumentException("Expected <bankId> <target> [tlsDir]: " + line);
+            }
+            targets.add(new BankTarget(fields[0], fields[1], fields.length > 2 ? fields[2] : defaultTlsDir));
+        }
+        return targets;
+    }
+
+    /**
+     * @return the number of banks that failed
+     */
+    static int run(Args options) throws Exception {
+        List<BankTarget> targets = readTargets(
+                options.get("targets", null),
+                options.get("tls-dir", Channels.DEFAULT_TLS_DIR));
+        int parallel = Math.min(options.getInt("parallel", 8), Math.max(targets.size(), 1));
+        long deadlineNanos = options.getDurationNanos("deadline", TimeUnit.SECONDS.toNanos(30));
+        ClientInterceptor deadline = new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                return next.newCall(method, callOptions.getDeadline() == null
+                        ? callOptions.withDeadlineAfter(deadlineNanos, TimeUnit.NANOSECONDS)
+                        : callOptions);
+            }
+        };
+        logger.warn("Running against {} banks, {} at a time", targets.size(), parallel);
+
+        List<Future<BankResult>> results = new ArrayList<>();
+        int failedBanks = 0;
+        try (ClientTransport transport = ClientTransport.fromArgs(options)) {
+            ExecutorService pool = Executors.newFixedThreadPool(parallel);
+            try {
+                for (BankTarget bank : targets) {
+                    results.add(pool.submit(() -> runBank(options, transport, bank, deadline)));
+                }
+                StringBuilder table = new StringBuilder();
+                table.append(String.format("%-16s %-32s %-6s %8s %7s %9s %9s %9s %9s%n",
+                        "bank", "target", "result", "calls", "errors", "wall s", "p50", "p99", "max"));
+                for (Future<BankResult> result : results) {
+                    BankResult bank = result.get();
+                    if (!bank.passed) {
+                        failedBanks++;
+                    }
+                    table.append(bank.row).append('\n');
+                }
+                table.append(String.format("%d of %d banks passed, latencies in ms", targets.size() - failedBanks, targets.size()));
+                logger.warn("Summary:\n{}", table);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        return failedBanks;
+    }
+
+    private static final class BankResult {
+        final boolean passed;
+        final String row;
+
+        BankResult(boolean passed, String row) {
+            this.passed = passed;
+            this.row = row;
+        }
+
+        static BankResult error(BankTarget bank, String message) {
+            return new BankResult(false, String.format("%-16s %-32s %-6s %s", bank.bankId, bank.target, "ERROR", message));
+        }
+    }
+
+    private static BankResult runBank(Args options, ClientTransport transport, BankTarget bank, ClientInterceptor deadline) {
+        Args bankOptions = options.with("tls-dir", bank.tlsDir);
+        ManagedChannel channel;
+        try {
+            channel = Channels.open(bankOptions, transport, bank.target, bank.bankId, deadline);
+        } catch (Exception e) {
+            logger.warn("{}: could not open channel: {}", bank.bankId, e.getMessage());
+            return BankResult.error(bank, e.getMessage());
+        }
+        try {
+            BankStubs stubs = new BankStubs(channel, bank.bankId);
+            LatencyStats stats;
+            if (options.has("load")) {
+                stats = Main.runLoad(bankOptions, stubs);
+            } else {
+                stats = new LatencyStats();
+                Suite.run(stubs, stats);
+            }
+            Histogram all = stats.combined();
+            boolean passed = stats.errors() == 0;
+            return new BankResult(passed, String.format("%-16s %-32s %-6s %8d %7d %9.1f %9.3f %9.3f %9.3f",
+                    bank.bankId,
+                    bank.target,
+                    passed ? "PASS" : "FAIL",
+                    all.getTotalCount(),
+                    stats.errors(),
+                    stats.elapsedNanos() / 1e9,
+                    LatencyStats.millis(all.getValueAtPercentile(50)),
+                    LatencyStats.millis(all.getValueAtPercentile(99)),
+                    LatencyStats.millis(all.getMaxValue())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return BankResult.error(bank, "interrupted");
+        } catch (RuntimeException e) {
+            // E.g. a bad load option; the other banks still run and the summary is still printed
+            logger.warn("{}: run failed", bank.bankId, e);
+            return BankResult.error(bank, e.toString());
+        } finally {
+            channel.shutdownNow();
+            try {
+                channel.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package io.token.sample.rpc.client;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Open-loop load: calls are issued on a fixed schedule given by a {@link RateProfile}, whether or
+ * not earlier calls have returned. Latency is measured from each call's intended send time, so a
+ * stall on either side shows up in the numbers instead of silently lowering the send rate
+ * (coordinated omission).
+ *
+ * <p>Calls that go out more than {@code --late-threshold} (default 1ms) after their intended time
+ * are counted as late; calls that would exceed {@code --max-in-flight} (default 10000) are not sent
+ * and counted as dropped. Both mean the client, not the bank, fell behind.
+ *
+ * <p>Calls go through the async stubs by default. {@code --calls=virtual} instead runs each call on
+ * a blocking stub in a virtual thread of its own (Java 21), and {@code --calls=platform} in a
+ * platform thread of its own, so {@code --compare=calls=async,virtual,platform} shows what each
+ * costs at the same rate.
+ *
+ * <p>Options: see {@link RateProfile}, plus {@code --ops} and {@code --unique-ids} as for
+ * {@link ClosedLoopLoad}.
+ */
+final class OpenLoopLoad {
+    private static final Logger logger = LoggerFactory.getLogger(OpenLoopLoad.class);
+
+    private final RateProfile profile;
+    private final List<Operation> operations;
+    private final int maxInFlight;
+    private final long lateThresholdNanos;
+    /** {@code async}, or the kind of thread a blocking call gets: {@code platform} or {@code virtual}. */
+    private final String calls;
+    /** {@code --seed} of the generated ids, or {@code null} to send the fixed sample requests. */
+    private final Long seed;
+
+    // Only touched by the scheduling thread
+    private long scheduled;
+    private long late;
+    private long dropped;
+    private long maxLagNanos;
+
+    OpenLoopLoad(RateProfile profile, List<Operation> operations, int maxInFlight, long lateThresholdNanos,
+                 String calls, Long seed) {
+        this.profile = profile;
+        this.operations = operations;
+        this.maxInFlight = maxInFlight;
+        this.lateThresholdNanos = lateThresholdNanos;
+        this.calls = calls;
+        this.seed = seed;
+    }
+
+    static OpenLoopLoad fromArgs(Args args) {
+        return new OpenLoopLoad(
+                RateProfile.fromArgs(args),
+                Operation.parseList(args.get("ops", ClosedLoopLoad.DEFAULT_OPS)),
+                args.getInt("max-in-flight", 10_000),
+                args.getDurationNanos("late-threshold", TimeUnit.MILLISECONDS.toNanos(1)),
+                args.get("calls", "async"),
+                args.has("unique-ids") ? args.getLong("seed", 0) : null);
+    }
+
+    /**
+     * Runs the schedule on the calling thread, waits for outstanding calls and returns the
+     * collected statistics.
+     */
+    LatencyStats run(BankStubs stubs) throws InterruptedException {
+        return run(stubs, new LatencyStats());
+    }
+
+    /**
+     * @param stats records the calls, e.g. for a {@link SoakMonitor} to read while the load runs
+     */
+    LatencyStats run(BankStubs stubs, LatencyStats stats) throws InterruptedException {
+        logger.warn("Open-loop load: {}, ops {}, {} calls", profile, operations, calls);
+        ExecutorService callers = callers();
+        SyntheticIds ids = seed == null ? null : new SyntheticIds(seed, 0);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long start = System.nanoTime();
+        long end = start + profile.durationNanos();
+        long intended = start + profile.nextCallAt(0);
+        int next = 0;
+
+        while (intended < end) {
+            long now = System.nanoTime();
+            while (now < intended) {
+                LockSupport.parkNanos(intended - now);
+                now = System.nanoTime();
+            }
+            long lag = now - intended;
+            maxLagNanos = Math.max(maxLagNanos, lag);
+            if (lag > lateThresholdNanos) {
+                late++;
+            }
+            scheduled++;
+
+            Operation operation = operations.get(next);
+            next = (next + 1) % operations.size();
+            if (!inFlight.tryAcquire()) {
+                dropped++;
+            } else if (callers == null) {
+                issue(stubs, ids, operation, intended, stats, inFlight);
+            } else {
+                // Ids are generated on the calling thread, so every call gets its own part of the stream
+                SyntheticIds callIds = ids == null ? null : ids.forCall(scheduled);
+                issueBlocking(callers, stubs, callIds, operation, intended, stats, inFlight);
+            }
+            intended = start + profile.nextCallAt(intended - start + profile.intervalAt(intended - start));
+        }
+
+        if (!inFlight.tryAcquire(maxInFlight, 30, TimeUnit.SECONDS)) {
+            logger.warn("{} calls still outstanding after 30s", maxInFlight - inFlight.availablePermits());
+        }
+        if (callers != null) {
+            callers.shutdownNow();
+        }
+
+        stats.stop();
+        logger.warn("Load finished:\n{}\n{}", stats.report(stats.elapsedNanos()), schedulerReport());
+        return stats;
+    }
+
+    private static void issue(BankStubs stubs, SyntheticIds ids, Operation operation, long intended, LatencyStats stats, Semaphore inFlight) {
+        try {
+            operation.callAsync(stubs, ids, error -> {
+                stats.record(operation.methodName, System.nanoTime() - intended, error != null);
+                inFlight.release();
+            });
+        } catch (RuntimeException e) {
+            stats.record(operation.methodName, System.nanoTime() - intended, true);
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Runs every call on a blocking stub in a thread of its own, for comparison with the async stubs.
+     */
+    private static void issueBlocking(ExecutorService callers, BankStubs stubs, SyntheticIds ids, Operation operation,
+                                      long intended, LatencyStats stats, Semaphore inFlight) {
+        try {
+            callers.execute(() -> {
+                boolean failed = false;
+                try {
+                    operation.call(stubs, ids);
+                } catch (RuntimeException e) {
+                    failed = true;
+                    logger.debug("{} failed", operation.methodName, e);
+                }
+                stats.record(operation.methodName, System.nanoTime() - intended, failed);
+                inFlight.release();
+            });
+        } catch (RuntimeException e) {
+            stats.record(operation.methodName, System.nanoTime() - intended, true);
+            inFlight.release();
+        }
+    }
+
+    private ExecutorService callers() {
+        switch (calls) {
+            case "async":
+                return null;
+            case "platform":
+                return Executors.newCachedThreadPool(new DefaultThreadFactory("bank-client-call", true));
+            case "virtual":
+                return VirtualThreads.newThreadPerTaskExecutor("bank-client-call");
+            default:
+                throw new IllegalArgumentException("Unknown calls: " + calls);
+        }
+    }
+
+    String schedulerReport() {
+        return String.format("scheduled %d calls: %d late (> %.3fms), %d dropped (> %d in flight), max schedule lag %.3fms",
+                scheduled,
+                late,
+                lateThresholdNanos / 1e6,
+                dropped,
+                maxInFlight,
+                maxLagNanos / 1e6);
+    }
+}
@@ -0,0 +1,220 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.stub.StreamObserver;
+import io.token.proto.bankapi.Bankapi.CreateBulkTransferRequest;
+import io.token.proto.bankapi.Bankapi.HealthCheckRequest;
+import io.token.proto.bankapi.Bankapi.TransferRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Bank API calls a load run can issue. Names match the RPC method names so that
+ * reports line up with server-side metrics, except for {@link #MINIMAL_TRANSFER}.
+ */
+enum Operation {
+    HEALTH_CHECK("HealthCheck") {
+        @Override
+        void call(BankStubs stubs, SyntheticIds ids) {
+            stubs.healthCheck.healthCheck(HealthCheckRequest.newBuilder()
+                    .setBankId(stubs.bankId)
+                    .build());
+        }
+
+        @Override
+        void callAsync(BankStubs stubs, SyntheticIds ids, Callback callback) {
+            stubs.healthCheckAsync.healthCheck(HealthCheckRequest.newBuilder()
+                    .setBankId(stubs.bankId)
+                    .build(), observer(callback));
+        }
+    },
+    TRANSFER("Transfer") {
+        @Override
+        void call(BankStubs stubs, SyntheticIds ids) {
+            stubs.transfers.transfer(transferRequest(ids));
+        }
+
+        @Override
+        void callAsync(BankStubs stubs, SyntheticIds ids, Callback callback) {
+            stubs.transfersAsync.transfer(transferRequest(ids), observer(callback));
+        }
+    },
+    GET_TRANSFER_STATUS("GetTransferStatus") {
+        @Override
+        void call(BankStubs stubs, SyntheticIds ids) {
+            stubs.transfers.getTransferStatus(TestRequests.getTransferStatusRequest());
+        }
+
+        @Override
+        void callAsync(BankStubs stubs, SyntheticIds ids, Callback callback) {
+            stubs.transfersAsync.getTransferStatus(TestRequests.getTransferStatusRequest(), observer(callback));
+        }
+    },
+    /** A {@code Transfer} call with the duplicate legacy fields stripped, see {@link TestRequests#minimalTransferRequest()}. */
+    MINIMAL_TRANSFER("MinimalTransfer") {
+        @Override
+        void call(BankStubs stubs, SyntheticIds ids) {
+            stubs.transfers.transfer(minimalTransferRequest(ids));
+        }
+
+        @Override
+        void callAsync(BankStubs stubs, SyntheticIds ids, Callback callback) {
+            stubs.transfersAsync.transfer(minimalTransferRequest(ids), observer(callback));
+        }
+    },
+    CREATE_BULK_TRANSFER("CreateBulkTransfer") {
+        @Override
+        void call(BankStubs stubs, SyntheticIds ids) {
+            stubs.transfers.createBulkTransfer(bulkTransferRequest(ids));
+        }
+
+        @Override
+        void callAsync(BankStubs stubs, SyntheticIds ids, Callback callback) {
+            stubs.transfersAsync.createBulkTransfer(bulkTransferRequest(ids), observer(callback));
+        }
+    },
+    GET_BALANCE("GetBalance") {
+        @Override
+        void call(BankStubs stubs, SyntheticIds ids) {
+            stubs.accounts.getBalance(TestRequests.getBalanceRequest());
+        }
+
+        @Override
+        void callAsync(BankStubs stubs, SyntheticIds ids, Callback callback) {
+            stubs.accountsAsync.getBalance(TestRequests.getBalanceRequest(), observer(callback));
+        }
+    },
+    GET_ACCOUNT("GetAccount") {
+        @Override
+        void call(BankStubs stubs, SyntheticIds ids) {
+            stubs.accounts.getAccount(TestRequests.getAccountRequest());
+        }
+
+        @Override
+        void callAsync(BankStubs stubs, SyntheticIds ids, Callback callback) {
+            stubs.accountsAsync.getAccount(TestRequests.getAccountRequest(), observer(callback));
+        }
+    },
+    GET_TRANSACTIONS("GetTransactions") {
+        @Override
+        void call(BankStubs stubs, SyntheticIds ids) {
+            stubs.accounts.getTransactions(TestRequests.getTransactionsRequest());
+        }
+
+        @Override
+        void callAsync(BankStubs stubs, SyntheticIds ids, Callback callback) {
+            stubs.accountsAsync.getTransactions(TestRequests.getTransactionsRequest(), observer(callback));
+        }
+    };
+
+    private static final String SYNTHETIC_PAYEE = "Synthetic Payee";
+
+    final String methodName;
+
+    Operation(String methodName) {
+        this.methodName = methodName;
+    }
+
+    /**
+     * Issues the call on the blocking stubs, throwing a {@link io.grpc.StatusRuntimeException} on failure.
+     */
+    void call(BankStubs stubs) {
+        call(stubs, null);
+    }
+
+    /**
+     * As {@link #call(BankStubs)}, with the transfer and consent ids, reference, amount and
+     * destination of transfers taken from {@code ids}, or the fixed samples if it is {@code null}.
+     */
+    abstract void call(BankStubs stubs, SyntheticIds ids);
+
+    /**
+     * Issues the call on the async stubs; {@code callback} is invoked once the call completes.
+     */
+    void callAsync(BankStubs stubs, Callback callback) {
+        callAsync(stubs, null, callback);
+    }
+
+    /**
+     * As {@link #callAsync(BankStubs, Callback)}, with ids as for {@link #call(BankStubs, SyntheticIds)}.
+     */
+    abstract void callAsync(BankStubs stubs, SyntheticIds ids, Callback callback);
+
+    /**
+     * Completion callback for {@link #callAsync}.
+     */
+    interface Callback {
+        /**
+         * @param error the failure, or {@code null} if the call succeeded
+         */
+        void onComplete(Throwable error);
+    }
+
+    private static TransferRequest transferRequest(SyntheticIds ids) {
+        return ids == null
+                ? TestRequests.transferRequest()
+                : TestRequests.transferRequest(ids.transferId(), ids.refId(), ids.amount(), ids.tokenId());
+    }
+
+    private static TransferRequest minimalTransferRequest(SyntheticIds ids) {
+        return ids == null
+                ? TestRequests.minimalTransferRequest()
+                : TestRequests.minimalTransferRequest(ids.transferId(), ids.refId(), ids.amount(), ids.tokenId());
+    }
+
+    private static CreateBulkTransferRequest bulkTransferRequest(SyntheticIds ids) {
+        if (ids == null) {
+            return TestRequests.bulkTransferRequest();
+        }
+        String amount = ids.amount();
+        return TestRequests.bulkTransferRequest(
+                ids.bulkTransferId(),
+                Collections.singletonList(TestRequests.bulkTransfer(
+                        ids.refId(), amount, ids.sortCode(), ids.accountNumber(), SYNTHETIC_PAYEE)),
+                amount);
+    }
+
+    private static <T> StreamObserver<T> observer(Callback callback) {
+        return new StreamObserver<T>() {
+            @Override
+            public void onNext(T value) {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                callback.onComplete(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                callback.onComplete(null);
+            }
+        };
+    }
+
+    static Operation forName(String name) {
+        for (Operation operation : values()) {
+            if (operation.methodName.equalsIgnoreCase(name) || operation.name().equalsIgnoreCase(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + name);
+    }
+
+    /**
+     * Parses a comma separated list of operation names, e.g. {@code GetBalance,GetAccount}.
+     */
+    static List<Operation> parseList(String names) {
+        List<Operation> operations = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                operations.add(forName(name.trim()));
+            }
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("No operations given");
+        }
+        return operations;
+    }
+}
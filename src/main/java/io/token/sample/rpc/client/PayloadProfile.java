@@ -0,0 +1,123 @@
+package io.token.sample.rpc.client;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized size of the {@link TestRequests} messages, broken down by field subtree, to see what
+ * each part of a request costs on the wire, e.g. the legacy fields that {@code MinimalTransfer}
+ * leaves out ({@code --profile-payloads}, {@code --profile-depth=N} levels of fields, default 3).
+ *
+ * <p>A field's size includes its tags and length prefixes, so the sizes of the top-level fields add
+ * up to the message's. Repeated fields are summed over their elements, shown as {@code name[]}. The
+ * gzip size is that of the message compressed on its own, as gRPC compresses each message with
+ * {@code --compression=gzip}.
+ */
+final class PayloadProfile {
+    private final int depth;
+
+    PayloadProfile(int depth) {
+        this.depth = depth;
+    }
+
+    static PayloadProfile fromArgs(Args args) {
+        return new PayloadProfile(args.getInt("profile-depth", 3));
+    }
+
+    /**
+     * The request of every {@link Operation} that sends one.
+     */
+    static Map<String, Message> requests() {
+        Map<String, Message> requests = new LinkedHashMap<>();
+        requests.put("Transfer", TestRequests.transferRequest());
+        requests.put("MinimalTransfer", TestRequests.minimalTransferRequest());
+        requests.put("CreateBulkTransfer", TestRequests.bulkTransferRequest());
+        requests.put("GetTransferStatus", TestRequests.getTransferStatusRequest());
+        requests.put("GetBalance", TestRequests.getBalanceRequest());
+        requests.put("GetAccount", TestRequests.getAccountRequest());
+        requests.put("GetTransactions", TestRequests.getTransactionsRequest());
+        return requests;
+    }
+
+    String report() {
+        StringBuilder sb = new StringBuilder(String.format("%-20s %8s %8s %7s", "request", "bytes", "gzip", "ratio"));
+        Map<String, Message> requests = requests();
+        for (Map.Entry<String, Message> request : requests.entrySet()) {
+            int size = request.getValue().getSerializedSize();
+            int gzip = gzipSize(request.getValue());
+            sb.append(String.format("%n%-20s %8d %8d %6.0f%%", request.getKey(), size, gzip, 100.0 * gzip / size));
+        }
+        for (Map.Entry<String, Message> request : requests.entrySet()) {
+            Message message = request.getValue();
+            sb.append(String.format("%n%n%s (%s)%n%-60s %8s %7s", request.getKey(), message.getDescriptorForType().getName(),
+                    "field", "bytes", "%"));
+            Map<String, Row> rows = new LinkedHashMap<>();
+            profile(message, "", 0, rows);
+            for (Row row : rows.values()) {
+                sb.append(String.format("%n%-60s %8d %6.1f%%", indent(row.depth) + row.name, row.bytes,
+                        100.0 * row.bytes / message.getSerializedSize()));
+            }
+        }
+        return sb.toString();
+    }
+
+    private void profile(Message message, String prefix, int level, Map<String, Row> rows) {
+        for (Map.Entry<FieldDescriptor, Object> field : message.getAllFields().entrySet()) {
+            FieldDescriptor descriptor = field.getKey();
+            String name = descriptor.getName() + (descriptor.isRepeated() ? "[]" : "");
+            String path = prefix + name;
+            Row row = rows.computeIfAbsent(path, p -> new Row(name, level));
+            row.bytes += message.getDefaultInstanceForType().newBuilderForType()
+                    .setField(descriptor, field.getValue())
+                    .build()
+                    .getSerializedSize();
+            if (descriptor.getJavaType() != FieldDescriptor.JavaType.MESSAGE || level + 1 >= depth) {
+                continue;
+            }
+            if (descriptor.isRepeated()) {
+                for (Object element : (List<?>) field.getValue()) {
+                    profile((Message) element, path + ".", level + 1, rows);
+                }
+            } else {
+                profile((Message) field.getValue(), path + ".", level + 1, rows);
+            }
+        }
+    }
+
+    static int gzipSize(Message message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            message.writeTo(gzip);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.size();
+    }
+
+    private static String indent(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("  ");
+        }
+        return sb.toString();
+    }
+
+    private static final class Row {
+        final String name;
+        final int depth;
+        long bytes;
+
+        Row(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+}
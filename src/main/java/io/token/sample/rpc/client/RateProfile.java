@@ -0,0 +1,133 @@
+package io.token.sample.rpc.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Target request rate over time for the open-loop load: either a constant rate for a fixed
+ * duration, or a sequence of steps, optionally preceded by a linear ramp-up.
+ *
+ * <p>Options: {@code --rate=500} with {@code --duration=60s}, or {@code --steps=100x30s,200x30s,400x30s};
+ * {@code --ramp=10s} ramps linearly up to the first step's rate. A step with a rate of 0, e.g.
+ * {@code 0x10s}, is a pause: no calls are scheduled until it ends.
+ */
+final class RateProfile {
+    /** Lowest rate used during the ramp, so that the first call is not scheduled at infinity. */
+    private static final double MIN_RATE = 1.0;
+
+    private final double[] rates;
+    private final long[] stepEnds;
+    private final long rampNanos;
+
+    RateProfile(double[] rates, long[] stepDurations, long rampNanos) {
+        if (rates.length == 0 || rates.length != stepDurations.length) {
+            throw new IllegalArgumentException("Each step needs a rate and a duration");
+        }
+        boolean anyCalls = false;
+        for (double rate : rates) {
+            if (!(rate >= 0) || Double.isInfinite(rate)) {
+                throw new IllegalArgumentException("Rate must be a number of calls per second, 0 or more: " + rate);
+            }
+            anyCalls |= rate > 0;
+        }
+        if (!anyCalls) {
+            throw new IllegalArgumentException("Rate must be above 0 in at least one step");
+        }
+        if (rampNanos > 0 && rates[0] == 0) {
+            throw new IllegalArgumentException("--ramp needs a first step with a rate above 0");
+        }
+        this.rates = rates.clone();
+        this.stepEnds = new long[stepDurations.length];
+        this.rampNanos = rampNanos;
+        long end = rampNanos;
+        for (int i = 0; i < stepDurations.length; i++) {
+            end += stepDurations[i];
+            stepEnds[i] = end;
+        }
+    }
+
+    static RateProfile fromArgs(Args args) {
+        long ramp = args.getDurationNanos("ramp", 0);
+        String steps = args.get("steps", null);
+        if (steps == null) {
+            return new RateProfile(
+                    new double[] {args.getDouble("rate", 100)},
+                    new long[] {args.getDurationNanos("duration", TimeUnit.SECONDS.toNanos(30))},
+                    ramp);
+        }
+        String[] parts = steps.split(",");
+        double[] rates = new double[parts.length];
+        long[] durations = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String[] step = parts[i].trim().split("x");
+            if (step.length != 2) {
+                throw new IllegalArgumentException("Step must look like <rps>x<duration>: " + parts[i]);
+            }
+            rates[i] = Double.parseDouble(step[0]);
+            durations[i] = Args.parseDurationNanos(step[1]);
+        }
+        return new RateProfile(rates, durations, ramp);
+    }
+
+    long durationNanos() {
+        return stepEnds[stepEnds.length - 1];
+    }
+
+    /**
+     * @return the target rate in calls per second at {@code elapsedNanos} into the run
+     */
+    double rateAt(long elapsedNanos) {
+        if (elapsedNanos < rampNanos) {
+            return Math.max(MIN_RATE, rates[0] * elapsedNanos / rampNanos);
+        }
+        for (int i = 0; i < stepEnds.length; i++) {
+            if (elapsedNanos < stepEnds[i]) {
+                return rates[i];
+            }
+        }
+        return rates[rates.length - 1];
+    }
+
+    /**
+     * @return the gap to the next scheduled call at {@code elapsedNanos} into the run, which must not
+     *     be in a pause, see {@link #nextCallAt(long)}
+     */
+    long intervalAt(long elapsedNanos) {
+        return (long) (TimeUnit.SECONDS.toNanos(1) / rateAt(elapsedNanos));
+    }
+
+    /**
+     * @return {@code elapsedNanos}, or the end of the pause it falls in
+     */
+    long nextCallAt(long elapsedNanos) {
+        if (elapsedNanos < rampNanos) {
+            return elapsedNanos;
+        }
+        for (int i = 0; i < stepEnds.length; i++) {
+            if (elapsedNanos < stepEnds[i] && rates[i] > 0) {
+                return elapsedNanos;
+            }
+            if (elapsedNanos < stepEnds[i]) {
+                elapsedNanos = stepEnds[i];
+            }
+        }
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (rampNanos > 0) {
+            sb.append("ramp ").append(TimeUnit.NANOSECONDS.toSeconds(rampNanos)).append("s, ");
+        }
+        long start = rampNanos;
+        for (int i = 0; i < rates.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(rates[i]).append(" rps for ")
+                    .append(TimeUnit.NANOSECONDS.toSeconds(stepEnds[i] - start)).append('s');
+            start = stepEnds[i];
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,196 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.MethodDescriptor;
+import io.token.proto.bankapi.AccountServiceGrpc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries, hedging and deadlines for the idempotent account reads ({@code GetBalance},
+ * {@code GetAccount}, {@code GetTransactions}), installed as the channel's default gRPC service
+ * config. Transfer calls are never retried or hedged: they have no method config at all.
+ *
+ * <p>Options:
+ * <ul>
+ * <li>{@code --reads=none|retry|hedge} (default none): retry reads that fail with {@code UNAVAILABLE}
+ * with exponential backoff, or send a hedged copy of a read that has not answered after the hedging
+ * delay and take whichever answers first. Both are bounded by {@code --max-attempts} (default 3)
+ * and by a retry throttling budget of {@code --retry-tokens} (default 10) tokens, refilled by
+ * {@code --retry-token-ratio} (default 0.1) per successful call, so a struggling bank does not get
+ * multiplied load.
+ * <li>{@code --hedge-delay=auto|T} (default auto): with {@code auto}, each read is called
+ * {@code --hedge-samples} (default 50) times, after as many warm-up calls, on a separate channel
+ * first and its p95 becomes its hedging delay.
+ * <li>{@code --read-deadline=T}: deadline of every read, covering all of its attempts.
+ * </ul>
+ */
+final class ReadPolicy {
+    private static final Logger logger = LoggerFactory.getLogger(ReadPolicy.class);
+
+    enum Mode {
+        NONE, RETRY, HEDGE
+    }
+
+    /** The reads the policy applies to, with the operation used to calibrate each. */
+    private static final Map<Operation, MethodDescriptor<?, ?>> READS = new EnumMap<>(Operation.class);
+
+    static {
+        READS.put(Operation.GET_BALANCE, AccountServiceGrpc.getGetBalanceMethod());
+        READS.put(Operation.GET_ACCOUNT, AccountServiceGrpc.getGetAccountMethod());
+        READS.put(Operation.GET_TRANSACTIONS, AccountServiceGrpc.getGetTransactionsMethod());
+    }
+
+    private static final long DEFAULT_HEDGE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    static final ReadPolicy NONE = new ReadPolicy(Mode.NONE, 1, 0, 0, 0, null, 0);
+
+    private final Mode mode;
+    private final int maxAttempts;
+    private final long deadlineNanos;
+    private final double retryTokens;
+    private final double retryTokenRatio;
+    /** Hedging delay per read; {@code null} until calibrated when {@code --hedge-delay=auto}. */
+    private final Map<Operation, Long> hedgeDelayNanos;
+    private final int hedgeSamples;
+
+    private ReadPolicy(Mode mode, int maxAttempts, long deadlineNanos, double retryTokens, double retryTokenRatio,
+                       Map<Operation, Long> hedgeDelayNanos, int hedgeSamples) {
+        this.mode = mode;
+        this.maxAttempts = maxAttempts;
+        this.deadlineNanos = deadlineNanos;
+        this.retryTokens = retryTokens;
+        this.retryTokenRatio = retryTokenRatio;
+        this.hedgeDelayNanos = hedgeDelayNanos;
+        this.hedgeSamples = hedgeSamples;
+    }
+
+    static ReadPolicy fromArgs(Args args) {
+        Mode mode = Mode.valueOf(args.get("reads", "none").toUpperCase(Locale.ROOT));
+        long deadlineNanos = args.getDurationNanos("read-deadline", 0);
+        if (mode == Mode.NONE && deadlineNanos == 0) {
+            return NONE;
+        }
+        String hedgeDelay = args.get("hedge-delay", "auto");
+        Map<Operation, Long> delays = null;
+        if (!hedgeDelay.equals("auto")) {
+            delays = new EnumMap<>(Operation.class);
+            for (Operation read : READS.keySet()) {
+                delays.put(read, Args.parseDurationNanos(hedgeDelay));
+            }
+        }
+        return new ReadPolicy(
+                mode,
+                args.getInt("max-attempts", 3),
+                deadlineNanos,
+                args.getDouble("retry-tokens", 10),
+                args.getDouble("retry-token-ratio", 0.1),
+                delays,
+                args.getInt("hedge-samples", 50));
+    }
+
+    boolean needsCalibration() {
+        return mode == Mode.HEDGE && hedgeDelayNanos == null;
+    }
+
+    /**
+     * Calls every read {@code --hedge-samples} times after as many warm-up calls and returns a copy
+     * of this policy with each read's p95 as its hedging delay. Reads that fail every time keep a
+     * 50ms delay.
+     */
+    ReadPolicy calibrate(BankStubs stubs) {
+        Map<Operation, Long> delays = new EnumMap<>(Operation.class);
+        for (Operation read : READS.keySet()) {
+            Histogram histogram = new Histogram(3);
+            for (int i = -hedgeSamples; i < hedgeSamples; i++) {
+                long start = System.nanoTime();
+                try {
+                    read.call(stubs);
+                    if (i >= 0) {
+                        histogram.recordValue(System.nanoTime() - start);
+                    }
+                } catch (RuntimeException e) {
+                    logger.debug("Calibration call of {} failed", read, e);
+                }
+            }
+            long delay = histogram.getTotalCount() == 0
+                    ? DEFAULT_HEDGE_DELAY_NANOS
+                    : histogram.getValueAtPercentile(95);
+            delays.put(read, delay);
+            logger.warn("Hedging {} after {} ms (p95 of {} calls)",
+                    read.methodName, String.format("%.3f", LatencyStats.millis(delay)), histogram.getTotalCount());
+        }
+        return new ReadPolicy(mode, maxAttempts, deadlineNanos, retryTokens, retryTokenRatio, delays, hedgeSamples);
+    }
+
+    void configure(ManagedChannelBuilder<?> builder) {
+        if (this == NONE) {
+            return;
+        }
+        if (needsCalibration()) {
+            throw new IllegalStateException("Hedging delays have not been calibrated");
+        }
+        builder.enableRetry().defaultServiceConfig(serviceConfig());
+    }
+
+    /**
+     * The service config as the map form of its JSON; gRPC expects numbers as {@code Double} and
+     * durations as strings such as {@code "0.050s"}.
+     */
+    Map<String, Object> serviceConfig() {
+        List<Object> methodConfigs = new ArrayList<>();
+        for (Map.Entry<Operation, MethodDescriptor<?, ?>> read : READS.entrySet()) {
+            Map<String, Object> name = new HashMap<>();
+            name.put("service", read.getValue().getServiceName());
+            name.put("method", read.getValue().getBareMethodName());
+
+            Map<String, Object> methodConfig = new HashMap<>();
+            methodConfig.put("name", Collections.singletonList(name));
+            if (deadlineNanos > 0) {
+                methodConfig.put("timeout", duration(deadlineNanos));
+            }
+            if (mode == Mode.RETRY) {
+                Map<String, Object> retry = new HashMap<>();
+                retry.put("maxAttempts", (double) maxAttempts);
+                retry.put("initialBackoff", "0.05s");
+                retry.put("maxBackoff", "1s");
+                retry.put("backoffMultiplier", 2.0);
+                retry.put("retryableStatusCodes", Arrays.asList("UNAVAILABLE"));
+                methodConfig.put("retryPolicy", retry);
+            } else if (mode == Mode.HEDGE) {
+                Map<String, Object> hedging = new HashMap<>();
+                hedging.put("maxAttempts", (double) maxAttempts);
+                hedging.put("hedgingDelay", duration(hedgeDelayNanos.get(read.getKey())));
+                hedging.put("nonFatalStatusCodes", Arrays.asList("UNAVAILABLE"));
+                methodConfig.put("hedgingPolicy", hedging);
+            }
+            methodConfigs.add(methodConfig);
+        }
+
+        Map<String, Object> config = new HashMap<>();
+        config.put("methodConfig", methodConfigs);
+        if (mode != Mode.NONE) {
+            Map<String, Object> throttling = new HashMap<>();
+            throttling.put("maxTokens", retryTokens);
+            throttling.put("tokenRatio", retryTokenRatio);
+            config.put("retryThrottling", throttling);
+        }
+        return config;
+    }
+
+    private static String duration(long nanos) {
+        return String.format(Locale.ROOT, "%.9fs", nanos / 1e9);
+    }
+}
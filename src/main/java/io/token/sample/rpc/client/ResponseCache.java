@@ -0,0 +1,455 @@
+package io.token.sample.rpc.client;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Deadline;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.token.proto.bankapi.AccountServiceGrpc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches GetBalance and GetAccount responses for a short time and coalesces identical concurrent
+ * requests into a single call to the bank, for bursts of callers asking about the same account.
+ * Enabled by {@code --cache-ttl=T}; {@code --cache-size=N} (default 10000) bounds the entries.
+ *
+ * <p>Entries are keyed by bank, method and request, i.e. consent id and account; the bank is the
+ * call's {@link MetadataInterceptor#BANK_ID} or else the channel's. Only successful responses are
+ * cached. A call that finds an identical one in flight waits for its result instead of calling the
+ * bank. Each waiting call still ends at its own deadline or when its {@link Context} is cancelled;
+ * the call to the bank, which runs on regardless for the others, has the deadline of the call that
+ * started it. When the cache is full, expired entries are dropped first, then arbitrary ones until
+ * it is a tenth below the bound, so lookups never take a lock.
+ *
+ * <p>Results are always delivered on the call's executor, or on a shared one if it has none, never
+ * from inside the caller's own {@code halfClose()}.
+ *
+ * <p>The {@link #interceptor()} must be the outermost one, so that the metrics and the recorder see
+ * only the calls that reach the bank. Hits, misses (calls to the bank) and coalesced calls are
+ * counted per method, see {@link #report()} and {@link #prometheusText()}.
+ */
+final class ResponseCache {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    private static final Set<String> METHODS = new HashSet<>(Arrays.asList(
+            AccountServiceGrpc.getGetBalanceMethod().getFullMethodName(),
+            AccountServiceGrpc.getGetAccountMethod().getFullMethodName()));
+
+    /** Runs the listeners of calls without an executor of their own, e.g. of async stubs. */
+    private static final Executor CALLBACKS =
+            Executors.newCachedThreadPool(new DefaultThreadFactory("response-cache", true));
+    /** Ends waiting calls at their deadlines. */
+    private static final Timer DEADLINES = new HashedWheelTimer(
+            new DefaultThreadFactory("response-cache-deadlines", true), 1, TimeUnit.MILLISECONDS);
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    /** The bank of calls that do not set {@link MetadataInterceptor#BANK_ID}. */
+    private final String bankId;
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Key, Flight> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counters> counters = new ConcurrentSkipListMap<>();
+
+    ResponseCache(long ttlNanos, int maxEntries, String bankId) {
+        this.ttlNanos = ttlNanos;
+        this.maxEntries = maxEntries;
+        this.bankId = bankId;
+    }
+
+    /**
+     * @return the cache configured by {@code --cache-ttl} and {@code --cache-size}, or {@code null}
+     *     if {@code --cache-ttl} is not given
+     */
+    static ResponseCache fromArgs(Args args, String bankId) {
+        if (!args.has("cache-ttl")) {
+            return null;
+        }
+        ResponseCache cache = new ResponseCache(
+                args.getDurationNanos("cache-ttl", 0),
+                args.getInt("cache-size", 10_000),
+                bankId);
+        logger.warn("Caching GetBalance and GetAccount for {}ms, up to {} entries",
+                TimeUnit.NANOSECONDS.toMillis(cache.ttlNanos), cache.maxEntries);
+        return cache;
+    }
+
+    ClientInterceptor interceptor() {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                if (!METHODS.contains(method.getFullMethodName())) {
+                    return next.newCall(method, callOptions);
+                }
+                String callBankId = callOptions.getOption(MetadataInterceptor.BANK_ID);
+                return new CachedCall<>(method, callOptions, next, callBankId != null ? callBankId : bankId);
+            }
+        };
+    }
+
+    /**
+     * One line per method: hits, misses and coalesced calls.
+     */
+    String report() {
+        StringBuilder sb = new StringBuilder(String.format("%-20s %10s %10s %10s %8s", "method", "hits", "misses", "coalesced", "saved"));
+        for (Map.Entry<String, Counters> method : counters.entrySet()) {
+            Counters c = method.getValue();
+            long hits = c.hits.sum();
+            long misses = c.misses.sum();
+            long coalesced = c.coalesced.sum();
+            long total = hits + misses + coalesced;
+            String name = method.getKey().substring(method.getKey().lastIndexOf('/') + 1);
+            sb.append(String.format("%n%-20s %10d %10d %10d %7.1f%%", name, hits, misses, coalesced,
+                    total == 0 ? 0.0 : 100.0 * (hits + coalesced) / total));
+        }
+        return sb.append(String.format("%n%d entries cached", entries.size())).toString();
+    }
+
+    /**
+     * The counters in Prometheus text format, for {@link ClientMetrics#prometheusText()}.
+     */
+    String prometheusText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP bank_client_cache_calls_total Cached calls by outcome: hit, miss (called the bank) or coalesced\n");
+        sb.append("# TYPE bank_client_cache_calls_total counter\n");
+        for (Map.Entry<String, Counters> method : counters.entrySet()) {
+            Counters c = method.getValue();
+            sample(sb, method.getKey(), "hit", c.hits.sum());
+            sample(sb, method.getKey(), "miss", c.misses.sum());
+            sample(sb, method.getKey(), "coalesced", c.coalesced.sum());
+        }
+        return sb.toString();
+    }
+
+    private static void sample(StringBuilder sb, String method, String outcome, long value) {
+        sb.append("bank_client_cache_calls_total{method=\"").append(method)
+                .append("\",outcome=\"").append(outcome).append("\"} ").append(value).append('\n');
+    }
+
+    private Counters counters(MethodDescriptor<?, ?> method) {
+        Counters c = counters.get(method.getFullMethodName());
+        return c != null ? c : counters.computeIfAbsent(method.getFullMethodName(), name -> new Counters());
+    }
+
+    private void put(Key key, Object response) {
+        long now = System.nanoTime();
+        entries.put(key, new Entry(response, now + ttlNanos));
+        if (entries.size() > maxEntries) {
+            evict(now);
+        }
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(entry -> entry.expiresNanos - now <= 0);
+        Iterator<Key> keys = entries.keySet().iterator();
+        int target = maxEntries - maxEntries / 10;
+        while (entries.size() > target && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    /**
+     * A unary call that is answered from the cache, joins an identical call in flight, or leads a
+     * new call to the bank that others can join.
+     */
+    private final class CachedCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final CallOptions callOptions;
+        private final Channel next;
+        private final String bank;
+        /** Where the listener is called, e.g. the blocking stub's own executor; gRPC requires it. */
+        private final Executor executor;
+        /** The caller's context, as a real call captures it when it is created. */
+        private final Context context = Context.current();
+        private final Context.CancellationListener cancelled = cancelledContext -> {
+            Status status = Contexts.statusFromCancelled(cancelledContext);
+            giveUp(status != null ? status : Status.CANCELLED.withDescription("Context cancelled"));
+        };
+        private Listener<RespT> listener;
+        private Metadata headers;
+        private ReqT request;
+        private boolean halfClosed;
+        private Flight flight;
+        private volatile Timeout deadlineTimeout;
+        private volatile boolean delivered;
+
+        CachedCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next, String bank) {
+            this.method = method;
+            this.callOptions = callOptions;
+            this.next = next;
+            this.bank = bank;
+            this.executor = callOptions.getExecutor() != null ? callOptions.getExecutor() : CALLBACKS;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            this.listener = responseListener;
+            this.headers = headers;
+        }
+
+        @Override
+        public void request(int numMessages) {
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            this.request = message;
+        }
+
+        @Override
+        public void halfClose() {
+            halfClosed = true;
+            Key key = new Key(bank, method.getFullMethodName(), request);
+            Counters c = counters(method);
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresNanos - System.nanoTime() > 0) {
+                c.hits.increment();
+                deliver(entry.response, Status.OK, new Metadata());
+                return;
+            }
+            Flight joined = new Flight();
+            Flight existing = inFlight.putIfAbsent(key, joined);
+            if (existing != null) {
+                c.coalesced.increment();
+                flight = existing;
+                if (!existing.join(this)) {
+                    // Completed since it was looked up
+                    Metadata trailers = new Metadata();
+                    trailers.merge(existing.trailers);
+                    deliver(existing.response, existing.status, trailers);
+                    return;
+                }
+                watch();
+                return;
+            }
+            c.misses.increment();
+            flight = joined;
+            joined.join(this);
+            watch();
+            lead(key, joined);
+        }
+
+        /**
+         * Ends this call at its own deadline, or when its context is cancelled, even while the call
+         * it waits for goes on.
+         */
+        private void watch() {
+            Deadline deadline = callOptions.getDeadline();
+            if (deadline != null) {
+                deadlineTimeout = DEADLINES.newTimeout(
+                        t -> giveUp(Status.DEADLINE_EXCEEDED.withDescription("Deadline exceeded waiting for an identical call")),
+                        Math.max(deadline.timeRemaining(TimeUnit.NANOSECONDS), 0), TimeUnit.NANOSECONDS);
+            }
+            if (context != Context.ROOT) {
+                context.addListener(cancelled, MoreExecutors.directExecutor());
+            }
+            if (delivered) {
+                // Completed while the watches were set up
+                unwatch();
+            }
+        }
+
+        private void unwatch() {
+            Timeout timeout = deadlineTimeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            context.removeListener(cancelled);
+        }
+
+        /**
+         * Leaves the flight with {@code status}, unless its result has already been delivered.
+         */
+        private void giveUp(Status status) {
+            if (flight.leave(this)) {
+                deliver(null, status, new Metadata());
+            }
+        }
+
+        /**
+         * Calls the bank on the channel's executor rather than this caller's, and outside its
+         * context, so that the result reaches the calls that joined even if this one is cancelled.
+         */
+        private void lead(Key key, Flight flight) {
+            Context detached = context.fork();
+            Context previous = detached.attach();
+            try {
+                start(key, flight);
+            } finally {
+                detached.detach(previous);
+            }
+        }
+
+        private void start(Key key, Flight flight) {
+            ClientCall<ReqT, RespT> call = next.newCall(method, callOptions.withExecutor(null));
+            try {
+                call.start(new Listener<RespT>() {
+                    private RespT response;
+
+                    @Override
+                    public void onMessage(RespT message) {
+                        response = message;
+                    }
+
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        if (status.isOk() && response != null) {
+                            put(key, response);
+                        }
+                        inFlight.remove(key, flight);
+                        flight.complete(response, status, trailers);
+                    }
+                }, headers);
+                call.request(2);
+                call.sendMessage(request);
+                call.halfClose();
+            } catch (RuntimeException e) {
+                call.cancel("Failed to start", e);
+                inFlight.remove(key, flight);
+                flight.complete(null, Status.fromThrowable(e), new Metadata());
+            }
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            // The call to the bank goes on for the others that joined it, and fills the cache
+            if (!halfClosed || flight != null && flight.leave(this)) {
+                Status status = Status.CANCELLED.withDescription(message).withCause(cause);
+                deliver(null, status, new Metadata());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void deliver(Object response, Status status, Metadata trailers) {
+            delivered = true;
+            unwatch();
+            executor.execute(() -> {
+                listener.onHeaders(new Metadata());
+                if (status.isOk()) {
+                    listener.onMessage((RespT) response);
+                }
+                listener.onClose(status, trailers);
+            });
+        }
+    }
+
+    /**
+     * A call to the bank and the calls waiting for its result.
+     */
+    private static final class Flight {
+        private final List<CachedCall<?, ?>> calls = new ArrayList<>();
+        private boolean done;
+        Object response;
+        Status status;
+        Metadata trailers;
+
+        /**
+         * @return {@code false} if the call has already completed
+         */
+        synchronized boolean join(CachedCall<?, ?> call) {
+            if (done) {
+                return false;
+            }
+            calls.add(call);
+            return true;
+        }
+
+        /**
+         * @return {@code false} if the call has already completed, and {@code call} got its result
+         */
+        synchronized boolean leave(CachedCall<?, ?> call) {
+            return !done && calls.remove(call);
+        }
+
+        void complete(Object response, Status status, Metadata trailers) {
+            List<CachedCall<?, ?>> waiting;
+            synchronized (this) {
+                this.response = response;
+                this.status = status;
+                this.trailers = trailers;
+                done = true;
+                waiting = new ArrayList<>(calls);
+                calls.clear();
+            }
+            for (CachedCall<?, ?> call : waiting) {
+                Metadata copy = new Metadata();
+                copy.merge(trailers);
+                call.deliver(response, status, copy);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String bank;
+        private final String method;
+        private final Object request;
+        private final int hash;
+
+        Key(String bank, String method, Object request) {
+            this.bank = bank;
+            this.method = method;
+            this.request = request;
+            // Protobuf memoizes the message's hash code
+            this.hash = 31 * (31 * Objects.hashCode(bank) + method.hashCode()) + request.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && Objects.equals(bank, other.bank) && method.equals(other.method)
+                    && request.equals(other.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final Object response;
+        final long expiresNanos;
+
+        Entry(Object response, long expiresNanos) {
+            this.response = response;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder coalesced = new LongAdder();
+    }
+}
@@ -0,0 +1,93 @@
+package io.token.sample.rpc.client;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.util.JsonFormat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Request/response logging for RPCs. Messages are rendered to JSON only when a log event is
+ * actually emitted, with a single shared printer.
+ *
+ * <p>One in every {@code sampleEvery} calls is logged in full. Failed calls, and calls slower than
+ * {@code slowNanos}, are always logged, together with their request. A {@code sampleEvery} of 0
+ * logs only failed and slow calls.
+ */
+final class RpcLogger {
+    private static final Logger logger = LoggerFactory.getLogger(RpcLogger.class);
+    private static final JsonFormat.Printer printer = JsonFormat.printer();
+
+    private static final String OUT = "--> OUT: \n{}";
+    private static final String IN = "<-- IN: \n{}";
+    private static final String SLOW = "Slow call ({} ms)\n--> OUT: \n{}\n<-- IN: \n{}";
+    private static final String FAILED = "{} failed after {} ms\n--> OUT: \n{}";
+
+    private final int sampleEvery;
+    private final long slowNanos;
+    private final AtomicLong calls = new AtomicLong();
+
+    RpcLogger(int sampleEvery, long slowNanos) {
+        this.sampleEvery = sampleEvery;
+        this.slowNanos = slowNanos;
+    }
+
+    /**
+     * Options: {@code --log-every=N} (default 1, every call) and {@code --log-slow=T}
+     * (default off).
+     */
+    static RpcLogger fromArgs(Args args) {
+        return new RpcLogger(
+                args.getInt("log-every", 1),
+                args.getDurationNanos("log-slow", Long.MAX_VALUE));
+    }
+
+    /**
+     * Decides whether the call is sampled and, if so, logs its request.
+     *
+     * @return whether the call is sampled; pass it on to {@link #response} or {@link #failure}
+     */
+    boolean request(MessageOrBuilder request) {
+        boolean sampled = sampleEvery > 0 && calls.getAndIncrement() % sampleEvery == 0;
+        if (sampled) {
+            logger.warn(OUT, json(request));
+        }
+        return sampled;
+    }
+
+    void response(boolean sampled, MessageOrBuilder request, MessageOrBuilder response, long latencyNanos) {
+        if (sampled) {
+            logger.warn(IN, json(response));
+        } else if (latencyNanos > slowNanos) {
+            logger.warn(SLOW, TimeUnit.NANOSECONDS.toMillis(latencyNanos), json(request), json(response));
+        }
+    }
+
+    void failure(boolean sampled, String what, MessageOrBuilder request, Throwable error, long latencyNanos) {
+        if (sampled) {
+            logger.error(what + " failed", error);
+        } else {
+            logger.error(FAILED, what, TimeUnit.NANOSECONDS.toMillis(latencyNanos), json(request), error);
+        }
+    }
+
+    /**
+     * Wraps {@code message} so that it is only printed as JSON if the log event using it is emitted.
+     */
+    static Object json(MessageOrBuilder message) {
+        return new Object() {
+            @Override
+            public String toString() {
+                try {
+                    return printer.print(message);
+                } catch (InvalidProtocolBufferException e) {
+                    return message.toString();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,310 @@
+package io.token.sample.rpc.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.util.JsonFormat;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServiceDescriptor;
+import io.grpc.stub.ClientCalls;
+import io.token.proto.bankapi.AccountServiceGrpc;
+import io.token.proto.bankapi.Bankapi.CreateBulkTransferRequest;
+import io.token.proto.bankapi.Bankapi.HealthCheckRequest;
+import io.token.proto.bankapi.Bankapi.TransferRequest;
+import io.token.proto.bankapi.HealthCheckServiceGrpc;
+import io.token.proto.bankapi.TransferServiceGrpc;
+import io.token.proto.common.token.TokenProtos;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A workload read from a JSON scenario file ({@code --scenario=PATH}): named request templates and
+ * a sequence of phases, each with its own duration, number of workers, think time and weighted mix
+ * of templates. For example:
+ *
+ * <pre>
+ * {
+ *   "templates": {
+ *     "balance":   {"method": "GetBalance"},
+ *     "history":   {"method": "GetTransactions", "request": {"limit": 50}},
+ *     "transfer":  {"method": "Transfer", "request": {"description": "scenario"}}
+ *   },
+ *   "phases": [
+ *     {"name": "steady", "duration": "60s", "workers": 16, "thinkTime": "5ms-20ms",
+ *      "mix": {"balance": 70, "history": 20, "transfer": 10}}
+ *   ]
+ * }
+ * </pre>
+ *
+ * <p>A template's {@code request} is protobuf JSON merged onto the {@link TestRequests} request of
+ * its method: fields it sets replace the base's, sub-messages are merged and repeated fields are
+ * appended. Every template is parsed into an immutable message once,
+ * when the file is loaded; workers only pick a prebuilt message and send it.
+ *
+ * <p>With {@code --unique-ids}, every {@code Transfer} and {@code CreateBulkTransfer} a worker
+ * sends gets new ids from the worker's own {@link SyntheticIds}, in place of the template's; the
+ * rest of the template, amounts included, is sent as it is.
+ */
+final class Scenario {
+    private static final Logger logger = LoggerFactory.getLogger(Scenario.class);
+
+    private static final Map<String, MethodDescriptor<?, ?>> METHODS = new HashMap<>();
+
+    static {
+        for (ServiceDescriptor service : Arrays.asList(
+                HealthCheckServiceGrpc.getServiceDescriptor(),
+                TransferServiceGrpc.getServiceDescriptor(),
+                AccountServiceGrpc.getServiceDescriptor())) {
+            for (MethodDescriptor<?, ?> method : service.getMethods()) {
+                METHODS.put(method.getBareMethodName(), method);
+            }
+        }
+    }
+
+    private final List<Phase> phases;
+    /** {@code --seed} of the generated ids, or {@code null} to send the templates as they are. */
+    private final Long seed;
+
+    private Scenario(List<Phase> phases, Long seed) {
+        this.phases = phases;
+        this.seed = seed;
+    }
+
+    static Scenario load(Args args, String bankId) throws IOException {
+        return load(args.get("scenario", null), bankId, args.has("unique-ids") ? args.getLong("seed", 0) : null);
+    }
+
+    static Scenario load(String path, String bankId, Long seed) throws IOException {
+        JsonObject root;
+        try (Reader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            root = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        JsonFormat.Parser parser = JsonFormat.parser();
+        Map<String, Template> templates = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonElement> entry : root.getAsJsonObject("templates").entrySet()) {
+            JsonObject template = entry.getValue().getAsJsonObject();
+            String methodName = template.get("method").getAsString();
+            MethodDescriptor<?, ?> method = METHODS.get(methodName);
+            if (method == null) {
+                throw new IllegalArgumentException("Template " + entry.getKey() + ": unknown method " + methodName);
+            }
+            Message request = baseRequest(methodName, bankId);
+            if (template.has("request")) {
+                Message.Builder overrides = request.newBuilderForType();
+                try {
+                    parser.merge(template.get("request").toString(), overrides);
+                } catch (InvalidProtocolBufferException e) {
+                    throw new IllegalArgumentException("Template " + entry.getKey() + ": " + e.getMessage(), e);
+                }
+                request = request.toBuilder().mergeFrom(overrides.build()).build();
+            }
+            templates.put(entry.getKey(), new Template(entry.getKey(), method, request));
+        }
+
+        List<Phase> phases = new ArrayList<>();
+        for (JsonElement element : root.getAsJsonArray("phases")) {
+            JsonObject phase = element.getAsJsonObject();
+            String name = phase.has("name") ? phase.get("name").getAsString() : "phase " + (phases.size() + 1);
+            JsonObject mix = phase.getAsJsonObject("mix");
+            Template[] picks = new Template[mix.size()];
+            double[] cumulative = new double[mix.size()];
+            double total = 0;
+            int i = 0;
+            for (Map.Entry<String, JsonElement> weight : mix.entrySet()) {
+                Template template = templates.get(weight.getKey());
+                if (template == null) {
+                    throw new IllegalArgumentException("Phase " + name + ": unknown template " + weight.getKey());
+                }
+                double value = weight.getValue().getAsDouble();
+                if (!(value >= 0) || Double.isInfinite(value)) {
+                    throw new IllegalArgumentException("Phase " + name + ": weight of " + weight.getKey() + " must be 0 or more");
+                }
+                if (value == 0) {
+                    // Left out, so that the running sums strictly increase and a pick never lands on it
+                    continue;
+                }
+                total += value;
+                picks[i] = template;
+                cumulative[i++] = total;
+            }
+            if (!(total > 0)) {
+                throw new IllegalArgumentException("Phase " + name + ": the mix needs a template with a weight above 0");
+            }
+            String[] thinkTime = (phase.has("thinkTime") ? phase.get("thinkTime").getAsString() : "0").split("-");
+            phases.add(new Phase(
+                    name,
+                    Args.parseDurationNanos(phase.get("duration").getAsString()),
+                    phase.has("workers") ? phase.get("workers").getAsInt() : 8,
+                    Args.parseDurationNanos(thinkTime[0]),
+                    Args.parseDurationNanos(thinkTime[thinkTime.length - 1]),
+                    Arrays.copyOf(picks, i),
+                    Arrays.copyOf(cumulative, i)));
+        }
+        logger.warn("Loaded scenario {}: {} templates, {} phases", path, templates.size(), phases.size());
+        return new Scenario(phases, seed);
+    }
+
+    private static Message baseRequest(String methodName, String bankId) {
+        switch (methodName) {
+            case "HealthCheck":
+                return HealthCheckRequest.newBuilder().setBankId(bankId).build();
+            case "Transfer":
+                return TestRequests.transferRequest();
+            case "GetTransferStatus":
+                return TestRequests.getTransferStatusRequest();
+            case "CreateBulkTransfer":
+                return TestRequests.bulkTransferRequest();
+            case "GetBalance":
+                return TestRequests.getBalanceRequest();
+            case "GetAccount":
+                return TestRequests.getAccountRequest();
+            case "GetTransactions":
+                return TestRequests.getTransactionsRequest();
+            default:
+                MethodDescriptor.Marshaller<?> marshaller = METHODS.get(methodName).getRequestMarshaller();
+                return (Message) ((MethodDescriptor.PrototypeMarshaller<?>) marshaller).getMessagePrototype();
+        }
+    }
+
+    /**
+     * Runs the phases one after the other and logs the latencies per template of each.
+     *
+     * @return the number of failed calls over all phases
+     */
+    long run(Channel channel) throws InterruptedException {
+        long errors = 0;
+        int stream = 0;
+        for (Phase phase : phases) {
+            logger.warn("Phase {}: {} workers for {}s", phase.name, phase.workers, TimeUnit.NANOSECONDS.toSeconds(phase.durationNanos));
+            LatencyStats stats = new LatencyStats();
+            long deadline = System.nanoTime() + phase.durationNanos;
+            ExecutorService pool = Executors.newFixedThreadPool(phase.workers);
+            for (int i = 0; i < phase.workers; i++) {
+                // Streams continue over the phases, so that no two workers of a run share one
+                SyntheticIds ids = seed == null ? null : new SyntheticIds(seed, stream++);
+                pool.execute(() -> phase.work(channel, ids, stats, deadline));
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            stats.stop();
+            errors += stats.errors();
+            logger.warn("Phase {} finished:\n{}", phase.name, stats.report(stats.elapsedNanos()));
+        }
+        return errors;
+    }
+
+    private static final class Template {
+        final String name;
+        final MethodDescriptor<Message, ?> method;
+        final Message request;
+
+        @SuppressWarnings("unchecked")
+        Template(String name, MethodDescriptor<?, ?> method, Message request) {
+            this.name = name;
+            this.method = (MethodDescriptor<Message, ?>) method;
+            this.request = request;
+        }
+
+        /**
+         * @return the request, with new ids from {@code ids} if it is a transfer
+         */
+        Message request(SyntheticIds ids) {
+            if (ids == null) {
+                return request;
+            }
+            switch (method.getBareMethodName()) {
+                case "Transfer":
+                    return ((TransferRequest) request).toBuilder()
+                            .setTransferId(ids.transferId())
+                            .setTokenRefId(ids.refId())
+                            .setConsentId(ids.tokenId())
+                            .build();
+                case "CreateBulkTransfer":
+                    CreateBulkTransferRequest bulk = (CreateBulkTransferRequest) request;
+                    TokenProtos.BulkTransferBody.Builder payload = bulk.getPayload().toBuilder();
+                    for (int i = 0; i < payload.getTransfersCount(); i++) {
+                        payload.setTransfers(i, payload.getTransfers(i).toBuilder().setRefId(ids.refId()));
+                    }
+                    return bulk.toBuilder()
+                            .setTokenBulkTransferId(ids.bulkTransferId())
+                            .setPayload(payload)
+                            .build();
+                default:
+                    return request;
+            }
+        }
+    }
+
+    private static final class Phase {
+        final String name;
+        final long durationNanos;
+        final int workers;
+        final long minThinkNanos;
+        final long maxThinkNanos;
+        final Template[] templates;
+        /**
+         * Running sum of the weights, strictly increasing as templates of weight 0 are left out, for
+         * a binary search with a random number below the total.
+         */
+        final double[] cumulativeWeights;
+
+        Phase(String name, long durationNanos, int workers, long minThinkNanos, long maxThinkNanos,
+              Template[] templates, double[] cumulativeWeights) {
+            this.name = name;
+            this.durationNanos = durationNanos;
+            this.workers = workers;
+            this.minThinkNanos = minThinkNanos;
+            this.maxThinkNanos = maxThinkNanos;
+            this.templates = templates;
+            this.cumulativeWeights = cumulativeWeights;
+        }
+
+        Template pick(ThreadLocalRandom random) {
+            double r = random.nextDouble(cumulativeWeights[cumulativeWeights.length - 1]);
+            int i = Arrays.binarySearch(cumulativeWeights, r);
+            return templates[i < 0 ? -i - 1 : i + 1];
+        }
+
+        void work(Channel channel, SyntheticIds ids, LatencyStats stats, long deadline) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                Template template = pick(random);
+                long begin = System.nanoTime();
+                boolean failed = false;
+                try {
+                    ClientCalls.blockingUnaryCall(channel, template.method, CallOptions.DEFAULT, template.request(ids));
+                } catch (RuntimeException e) {
+                    failed = true;
+                    logger.debug("{} failed", template.name, e);
+                }
+                stats.record(template.name, System.nanoTime() - begin, failed);
+                long think = minThinkNanos + (maxThinkNanos > minThinkNanos ? random.nextLong(maxThinkNanos - minThinkNanos + 1) : 0);
+                if (think > 0) {
+                    LockSupport.parkNanos(think);
+                }
+            }
+        }
+    }
+}
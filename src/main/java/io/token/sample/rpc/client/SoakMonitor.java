@@ -0,0 +1,337 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.ClientInterceptor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches a long load run ({@code --soak}) for slow leaks and throughput decay. Every
+ * {@code --soak-interval} (default 10s) it appends one row to {@code --soak-out} (default
+ * {@code soak.csv}; JSON lines if the name ends in {@code .jsonl}): the window's throughput, errors
+ * and latency percentiles, the calls in flight, GC count and pause time, heap used and heap left
+ * after the last GC, and direct memory, both the JVM's direct buffers and Netty's own pooled arenas.
+ *
+ * <p>Calls in flight, heap after GC and direct memory are flagged as a possible leak when they have
+ * grown, by more than 5% in all, without ever falling over the last {@code --soak-leak-windows}
+ * windows (default 6). Flagged series are logged and named in the row's {@code flags} column.
+ *
+ * <p>The load is that of {@code --load} (default open loop, see {@link OpenLoopLoad}), for
+ * {@code --duration} (default 1h).
+ */
+final class SoakMonitor implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SoakMonitor.class);
+
+    private static final String[] COLUMNS = {
+        "time", "elapsed_s", "calls", "errors", "rps", "p50_ms", "p99_ms", "p999_ms", "max_ms", "in_flight",
+        "gc_count", "gc_pause_ms", "heap_used", "heap_after_gc", "direct_jvm", "direct_netty", "flags"
+    };
+
+    private final long intervalNanos;
+    private final Path out;
+    private final boolean jsonl;
+    /** Counts the calls in flight, whatever the load runner. */
+    private final ClientMetrics calls = new ClientMetrics(false);
+    private final Trend inFlight;
+    private final Trend heapAfterGc;
+    private final Trend directMemory;
+    private final Set<String> flagged = new LinkedHashSet<>();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("soak-monitor", true));
+
+    // Guarded by this
+    private LatencyStats stats;
+    private BufferedWriter writer;
+    private long lastErrors;
+    private long lastGcCount;
+    private long lastGcMillis;
+    private long windowStartNanos;
+    private long rows;
+
+    SoakMonitor(long intervalNanos, Path out, int leakWindows) {
+        this.intervalNanos = intervalNanos;
+        this.out = out;
+        this.jsonl = out.getFileName().toString().endsWith(".jsonl");
+        this.inFlight = new Trend("in_flight", leakWindows);
+        this.heapAfterGc = new Trend("heap_after_gc", leakWindows);
+        this.directMemory = new Trend("direct", leakWindows);
+    }
+
+    /**
+     * @return the monitor configured by the {@code --soak} options, or {@code null} if
+     *     {@code --soak} is not given
+     */
+    static SoakMonitor fromArgs(Args args) {
+        if (!args.has("soak")) {
+            return null;
+        }
+        return new SoakMonitor(
+                args.getDurationNanos("soak-interval", TimeUnit.SECONDS.toNanos(10)),
+                Paths.get(args.get("soak-out", "soak.csv")),
+                args.getInt("soak-leak-windows", 6));
+    }
+
+    /**
+     * @return {@code args} with the soak defaults for the load: open loop, for an hour
+     */
+    static Args loadOptions(Args args) {
+        if (!args.has("load")) {
+            args = args.with("load", "open");
+        }
+        if (!args.has("duration")) {
+            args = args.with("duration", "1h");
+        }
+        return args;
+    }
+
+    ClientInterceptor interceptor() {
+        return calls.interceptor();
+    }
+
+    /**
+     * Opens the output and starts sampling.
+     *
+     * @return the statistics the load is to record into
+     */
+    synchronized LatencyStats start() throws IOException {
+        writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8);
+        if (!jsonl) {
+            writer.write(String.join(",", COLUMNS));
+            writer.newLine();
+            writer.flush();
+        }
+        stats = new LatencyStats();
+        windowStartNanos = System.nanoTime();
+        lastGcCount = LoadComparison.gcCount();
+        lastGcMillis = gcPauseMillis();
+        logger.warn("Soak: a row every {}s to {}", TimeUnit.NANOSECONDS.toSeconds(intervalNanos), out);
+        scheduler.scheduleAtFixedRate(this::sampleQuietly, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        return stats;
+    }
+
+    private void sampleQuietly() {
+        try {
+            sample();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not write soak stats to {}", out, e);
+        }
+    }
+
+    private synchronized void sample() throws IOException {
+        long now = System.nanoTime();
+        double seconds = (now - windowStartNanos) / 1e9;
+        windowStartNanos = now;
+        Histogram window = stats.window();
+        long errors = stats.errors();
+        long gcCount = LoadComparison.gcCount();
+        long gcMillis = gcPauseMillis();
+        long callsInFlight = 0;
+        for (MethodMetrics method : calls.methods()) {
+            callsInFlight += method.inFlight.sum();
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long afterGc = heapAfterGc();
+        long directJvm = directBufferBytes();
+        long directNetty = PlatformDependent.usedDirectMemory();
+
+        List<String> flags = new ArrayList<>();
+        check(inFlight, callsInFlight, flags);
+        check(heapAfterGc, afterGc, flags);
+        check(directMemory, directJvm + Math.max(directNetty, 0), flags);
+
+        Object[] row = {
+            Instant.now().toString(),
+            round(stats.elapsedNanos() / 1e9),
+            window.getTotalCount(),
+            errors - lastErrors,
+            round(seconds > 0 ? window.getTotalCount() / seconds : 0),
+            round(LatencyStats.millis(window.getValueAtPercentile(50))),
+            round(LatencyStats.millis(window.getValueAtPercentile(99))),
+            round(LatencyStats.millis(window.getValueAtPercentile(99.9))),
+            round(LatencyStats.millis(window.getMaxValue())),
+            callsInFlight,
+            gcCount - lastGcCount,
+            gcMillis - lastGcMillis,
+            heap.getUsed(),
+            afterGc,
+            directJvm,
+            directNetty,
+            String.join("+", flags)
+        };
+        lastErrors = errors;
+        lastGcCount = gcCount;
+        lastGcMillis = gcMillis;
+        writer.write(jsonl ? json(row) : csv(row));
+        writer.newLine();
+        // Flushed every row, so that the file can be watched while the run goes on
+        writer.flush();
+        rows++;
+        logger.warn("Soak {}s: {} rps, p99 {}ms, {} errors, {} in flight, heap after GC {}MB, direct {}MB{}",
+                row[1], row[4], row[6], row[3], callsInFlight, afterGc >> 20, (directJvm + Math.max(directNetty, 0)) >> 20,
+                flags.isEmpty() ? "" : ", growing: " + flags);
+    }
+
+    private void check(Trend trend, long value, List<String> flags) {
+        if (trend.add(value)) {
+            flags.add(trend.name);
+            if (flagged.add(trend.name)) {
+                logger.warn("Possible leak: {} grew over each of the last {} windows, from {} to {}",
+                        trend.name, trend.windows, trend.first(), value);
+            }
+        }
+    }
+
+    private static String csv(Object[] row) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < row.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(row[i]);
+        }
+        return sb.toString();
+    }
+
+    private static String json(Object[] row) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < row.length; i++) {
+            sb.append(i == 0 ? "\"" : ",\"").append(COLUMNS[i]).append("\":");
+            if (row[i] instanceof String) {
+                // Timestamps and flag names, nothing to escape
+                sb.append('"').append(row[i]).append('"');
+            } else {
+                sb.append(row[i]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    /**
+     * Collection time of the stop-the-world collectors; concurrent cycles, e.g. G1's, do not pause
+     * the application.
+     */
+    private static long gcPauseMillis() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!gc.getName().contains("Concurrent")) {
+                time += Math.max(gc.getCollectionTime(), 0);
+            }
+        }
+        return time;
+    }
+
+    /**
+     * Heap in use just after the most recent collection of each heap pool, i.e. what survived it.
+     */
+    private static long heapAfterGc() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Direct buffers allocated through the JDK; Netty allocates its pooled arenas around it, see
+     * {@link PlatformDependent#usedDirectMemory()}.
+     */
+    private static long directBufferBytes() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the last, partial window and closes the output.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        scheduler.shutdownNow();
+        if (writer == null) {
+            return;
+        }
+        try {
+            if (System.nanoTime() - windowStartNanos >= TimeUnit.SECONDS.toNanos(1)) {
+                sample();
+            }
+        } finally {
+            writer.close();
+        }
+        logger.warn("Soak: {} rows in {}, {}", rows, out,
+                flagged.isEmpty() ? "no steady growth seen" : "possible leaks: " + flagged);
+    }
+
+    /**
+     * The last few values of one series, to spot steady growth.
+     */
+    private static final class Trend {
+        final String name;
+        final int windows;
+        private final ArrayDeque<Long> values = new ArrayDeque<>();
+
+        Trend(String name, int windows) {
+            this.name = name;
+            this.windows = windows;
+        }
+
+        /**
+         * @return whether the series has grown by more than 5% without falling over the last
+         *     {@link #windows} values
+         */
+        boolean add(long value) {
+            values.addLast(value);
+            if (values.size() > windows) {
+                values.removeFirst();
+            }
+            if (values.size() < windows || windows < 2) {
+                return false;
+            }
+            long previous = Long.MIN_VALUE;
+            for (long v : values) {
+                if (v < previous) {
+                    return false;
+                }
+                previous = v;
+            }
+            long first = first();
+            return value > first + first / 20;
+        }
+
+        long first() {
+            return values.peekFirst();
+        }
+    }
+}
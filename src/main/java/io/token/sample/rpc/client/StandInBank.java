@@ -0,0 +1,388 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.token.proto.bankapi.AccountServiceGrpc;
+import io.token.proto.bankapi.Bankapi.CreateBulkTransferRequest;
+import io.token.proto.bankapi.Bankapi.CreateBulkTransferResponse;
+import io.token.proto.bankapi.Bankapi.GetAccountRequest;
+import io.token.proto.bankapi.Bankapi.GetAccountResponse;
+import io.token.proto.bankapi.Bankapi.GetBalanceRequest;
+import io.token.proto.bankapi.Bankapi.GetBalanceResponse;
+import io.token.proto.bankapi.Bankapi.GetTransactionsRequest;
+import io.token.proto.bankapi.Bankapi.GetTransactionsResponse;
+import io.token.proto.bankapi.Bankapi.GetTransferStatusRequest;
+import io.token.proto.bankapi.Bankapi.GetTransferStatusResponse;
+import io.token.proto.bankapi.Bankapi.HealthCheckRequest;
+import io.token.proto.bankapi.Bankapi.HealthCheckResponse;
+import io.token.proto.bankapi.Bankapi.TransferRequest;
+import io.token.proto.bankapi.Bankapi.TransferResponse;
+import io.token.proto.bankapi.HealthCheckServiceGrpc;
+import io.token.proto.bankapi.TransferServiceGrpc;
+import io.token.proto.common.money.MoneyProtos.Money;
+import io.token.proto.common.transaction.TransactionProtos.Transaction;
+import io.token.proto.common.transaction.TransactionProtos.TransactionStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A stand-in bank implementing the health check, transfer and account services, so the client, the
+ * load modes and the benchmarks can run without a real bank. It serves either in-process or as a
+ * plaintext Netty server on loopback.
+ *
+ * <p>Options:
+ * <ul>
+ * <li>{@code --stand-in-latency=SPEC} (default {@code fixed:0}): {@code fixed:T},
+ * {@code uniform:T1-T2}, {@code exp:MEAN} or {@code lognormal:MEDIAN,SIGMA}
+ * <li>{@code --stand-in-tail=P:T}: additionally delay a fraction P of the calls by T
+ * <li>{@code --stand-in-error-rate=P} (default 0) and {@code --stand-in-error-code=CODE} (default
+ * {@code UNAVAILABLE}): fail a fraction P of the calls
+ * <li>{@code --stand-in-max-concurrent=N}: reject calls beyond N in flight with
+ * {@code RESOURCE_EXHAUSTED}
+ * <li>{@code --stand-in-settle=T} (default 1s): how long after a transfer its status turns
+ * {@code SUCCESS}; until then it is {@code PROCESSING}. A transfer is forgotten once settled, as
+ * an unknown transfer is reported settled anyway
+ * <li>{@code --stand-in-transactions=N} (default 1000): length of the account's history
+ * </ul>
+ *
+ * <p>Handlers never block: delayed responses are sent from a scheduler thread.
+ */
+final class StandInBank implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(StandInBank.class);
+
+    private final Delay delay;
+    private final double tailRate;
+    private final long tailNanos;
+    private final double errorRate;
+    private final Status errorStatus;
+    private final int maxConcurrent;
+    private final long settleNanos;
+    private final int transactions;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+            2, new DefaultThreadFactory("stand-in-bank", true));
+    /** Start times of the transfers not settled yet, swept every {@link #settleNanos}. */
+    private final Map<String, Long> transfersStarted = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private Server server;
+
+    StandInBank(Delay delay, double tailRate, long tailNanos, double errorRate, Status.Code errorCode,
+                int maxConcurrent, long settleNanos, int transactions) {
+        this.delay = delay;
+        this.tailRate = tailRate;
+        this.tailNanos = tailNanos;
+        this.errorRate = errorRate;
+        this.errorStatus = errorCode.toStatus().withDescription("Injected by the stand-in bank");
+        this.maxConcurrent = maxConcurrent;
+        this.settleNanos = settleNanos;
+        this.transactions = transactions;
+        long sweepNanos = Math.max(settleNanos, TimeUnit.MILLISECONDS.toNanos(100));
+        scheduler.scheduleWithFixedDelay(this::forgetSettled, sweepNanos, sweepNanos, TimeUnit.NANOSECONDS);
+    }
+
+    static StandInBank fromArgs(Args args) {
+        String tail = args.get("stand-in-tail", "0:0");
+        int colon = tail.indexOf(':');
+        return new StandInBank(
+                Delay.parse(args.get("stand-in-latency", "fixed:0")),
+                Double.parseDouble(tail.substring(0, colon)),
+                Args.parseDurationNanos(tail.substring(colon + 1)),
+                args.getDouble("stand-in-error-rate", 0),
+                Status.Code.valueOf(args.get("stand-in-error-code", "UNAVAILABLE").toUpperCase(Locale.ROOT)),
+                args.getInt("stand-in-max-concurrent", Integer.MAX_VALUE),
+                args.getDurationNanos("stand-in-settle", TimeUnit.SECONDS.toNanos(1)),
+                args.getInt("stand-in-transactions", 1000));
+    }
+
+    /**
+     * Serves in-process; connect with {@code in-process:<name>} as the target.
+     */
+    StandInBank startInProcess(String name) throws IOException {
+        server = addServices(InProcessServerBuilder.forName(name).directExecutor())
+                .build()
+                .start();
+        logger.warn("Stand-in bank serving in-process as {}", name);
+        return this;
+    }
+
+    /**
+     * Serves plaintext on loopback; port 0 picks a free port.
+     *
+     * @return the port
+     */
+    int startLoopback(int port) throws IOException {
+        server = addServices(NettyServerBuilder.forAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), port))
+                        .directExecutor())
+                .build()
+                .start();
+        logger.warn("Stand-in bank serving on localhost:{}", server.getPort());
+        return server.getPort();
+    }
+
+    private <T extends ServerBuilder<T>> T addServices(T builder) {
+        ConcurrencyCap cap = new ConcurrencyCap();
+        return builder
+                .addService(ServerInterceptors.intercept(new HealthCheck(), cap))
+                .addService(ServerInterceptors.intercept(new Transfers(), cap))
+                .addService(ServerInterceptors.intercept(new Accounts(), cap));
+    }
+
+    void awaitTermination() throws InterruptedException {
+        server.awaitTermination();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.shutdownNow();
+        }
+        scheduler.shutdownNow();
+        logger.warn("Stand-in bank served {} calls: {} injected errors, {} rejected over the concurrency cap",
+                calls.sum(), injectedErrors.sum(), rejected.sum());
+    }
+
+    /**
+     * Sends {@code response}, or the injected error, after the configured delay.
+     */
+    private <T> void respond(StreamObserver<T> observer, T response) {
+        calls.increment();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean fail = errorRate > 0 && random.nextDouble() < errorRate;
+        long nanos = delay.nextNanos(random);
+        if (tailRate > 0 && random.nextDouble() < tailRate) {
+            nanos += tailNanos;
+        }
+        Runnable send = () -> {
+            if (fail) {
+                injectedErrors.increment();
+                observer.onError(errorStatus.asRuntimeException());
+            } else {
+                observer.onNext(response);
+                observer.onCompleted();
+            }
+        };
+        if (nanos <= 0) {
+            send.run();
+        } else {
+            scheduler.schedule(send, nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Forgets the transfers whose status has not been asked for since they settled.
+     */
+    private void forgetSettled() {
+        long now = System.nanoTime();
+        transfersStarted.values().removeIf(started -> now - started >= settleNanos);
+    }
+
+    private static Money gbp(String value) {
+        return Money.newBuilder().setCurrency("GBP").setValue(value).build();
+    }
+
+    private final class HealthCheck extends HealthCheckServiceGrpc.HealthCheckServiceImplBase {
+        @Override
+        public void healthCheck(HealthCheckRequest request, StreamObserver<HealthCheckResponse> responseObserver) {
+            respond(responseObserver, HealthCheckResponse.getDefaultInstance());
+        }
+    }
+
+    private final class Transfers extends TransferServiceGrpc.TransferServiceImplBase {
+        @Override
+        public void transfer(TransferRequest request, StreamObserver<TransferResponse> responseObserver) {
+            transfersStarted.putIfAbsent(request.getTransferId(), System.nanoTime());
+            respond(responseObserver, TransferResponse.newBuilder()
+                    .setTransactionId("tx:" + request.getTransferId())
+                    .setStatus(TransactionStatus.PROCESSING)
+                    .build());
+        }
+
+        @Override
+        public void getTransferStatus(GetTransferStatusRequest request, StreamObserver<GetTransferStatusResponse> responseObserver) {
+            Long started = transfersStarted.get(request.getTransferId());
+            boolean settled = started == null || System.nanoTime() - started >= settleNanos;
+            if (settled && started != null) {
+                transfersStarted.remove(request.getTransferId(), started);
+            }
+            TransactionStatus status = settled ? TransactionStatus.SUCCESS : TransactionStatus.PROCESSING;
+            respond(responseObserver, GetTransferStatusResponse.newBuilder()
+                    .setStatus(status)
+                    .build());
+        }
+
+        @Override
+        public void createBulkTransfer(CreateBulkTransferRequest request, StreamObserver<CreateBulkTransferResponse> responseObserver) {
+            respond(responseObserver, CreateBulkTransferResponse.newBuilder()
+                    .setTransactionId("tx:" + request.getTokenBulkTransferId())
+                    .build());
+        }
+    }
+
+    private final class Accounts extends AccountServiceGrpc.AccountServiceImplBase {
+        @Override
+        public void getBalance(GetBalanceRequest request, StreamObserver<GetBalanceResponse> responseObserver) {
+            respond(responseObserver, GetBalanceResponse.newBuilder()
+                    .setCurrent(gbp("1000.00"))
+                    .setAvailable(gbp("900.00"))
+                    .build());
+        }
+
+        @Override
+        public void getAccount(GetAccountRequest request, StreamObserver<GetAccountResponse> responseObserver) {
+            respond(responseObserver, GetAccountResponse.newBuilder()
+                    .setName("Stand-in account")
+                    .build());
+        }
+
+        /**
+         * Pages through a history of {@code --stand-in-transactions} transactions; the offset is
+         * the index of the first transaction of the page.
+         */
+        @Override
+        public void getTransactions(GetTransactionsRequest request, StreamObserver<GetTransactionsResponse> responseObserver) {
+            int from;
+            try {
+                from = request.getOffset().isEmpty() ? 0 : Integer.parseInt(request.getOffset());
+            } catch (NumberFormatException e) {
+                responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Bad offset").asRuntimeException());
+                return;
+            }
+            int to = Math.min(transactions, from + Math.max(request.getLimit(), 1));
+            GetTransactionsResponse.Builder page = GetTransactionsResponse.newBuilder();
+            for (int i = from; i < to; i++) {
+                page.addTransactions(Transaction.newBuilder()
+                        .setId("tx:" + i)
+                        .setStatus(TransactionStatus.SUCCESS)
+                        .setAmount(gbp(Amounts.format(100L * (100 + i % 10_000))))
+                        .setDescription("Stand-in transaction " + i));
+            }
+            if (to < transactions) {
+                page.setOffset(Integer.toString(to));
+            }
+            respond(responseObserver, page.build());
+        }
+    }
+
+    /**
+     * Rejects calls beyond {@code --stand-in-max-concurrent} in flight.
+     */
+    private final class ConcurrencyCap implements ServerInterceptor {
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+            if (inFlight.incrementAndGet() > maxConcurrent) {
+                inFlight.decrementAndGet();
+                rejected.increment();
+                call.close(Status.RESOURCE_EXHAUSTED.withDescription("Stand-in bank concurrency cap reached"), new Metadata());
+                return new ServerCall.Listener<ReqT>() {
+                };
+            }
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    inFlight.decrementAndGet();
+                }
+            };
+            ServerCall<ReqT, RespT> counted = new SimpleForwardingServerCall<ReqT, RespT>(call) {
+                @Override
+                public void close(Status status, Metadata trailers) {
+                    release.run();
+                    super.close(status, trailers);
+                }
+            };
+            return new SimpleForwardingServerCallListener<ReqT>(next.startCall(counted, headers)) {
+                @Override
+                public void onCancel() {
+                    release.run();
+                    super.onCancel();
+                }
+            };
+        }
+    }
+
+    /**
+     * A latency distribution, see the class comment for the specs.
+     */
+    abstract static class Delay {
+        abstract long nextNanos(ThreadLocalRandom random);
+
+        static Delay parse(String spec) {
+            int colon = spec.indexOf(':');
+            String kind = colon < 0 ? "fixed" : spec.substring(0, colon);
+            String params = spec.substring(colon + 1);
+            switch (kind) {
+                case "fixed": {
+                    long nanos = Args.parseDurationNanos(params);
+                    return new Delay() {
+                        @Override
+                        long nextNanos(ThreadLocalRandom random) {
+                            return nanos;
+                        }
+                    };
+                }
+                case "uniform": {
+                    String[] range = params.split("-");
+                    long min = Args.parseDurationNanos(range[0]);
+                    long max = Args.parseDurationNanos(range[1]);
+                    return new Delay() {
+                        @Override
+                        long nextNanos(ThreadLocalRandom random) {
+                            return min + random.nextLong(max - min + 1);
+                        }
+                    };
+                }
+                case "exp": {
+                    long mean = Args.parseDurationNanos(params);
+                    return new Delay() {
+                        @Override
+                        long nextNanos(ThreadLocalRandom random) {
+                            return (long) (-mean * Math.log(1 - random.nextDouble()));
+                        }
+                    };
+                }
+                case "lognormal": {
+                    String[] parts = params.split(",");
+                    double median = Args.parseDurationNanos(parts[0]);
+                    double sigma = Double.parseDouble(parts[1]);
+                    return new Delay() {
+                        @Override
+                        long nextNanos(ThreadLocalRandom random) {
+                            return (long) (median * Math.exp(sigma * random.nextGaussian()));
+                        }
+                    };
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wall-clock time of the phases of a run up to its first completed call, to see where the startup
+ * time of short runs goes. The caller marks the end of each phase; the {@link #interceptor()} marks
+ * the first call and logs the report. JVM startup, until this timer was created, is read from the
+ * runtime MXBean only when reporting, so that measuring does not load the management classes early.
+ */
+final class StartupTimer {
+    private static final Logger logger = LoggerFactory.getLogger(StartupTimer.class);
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private long lastNanos = startNanos;
+    private volatile boolean reported;
+
+    /**
+     * Ends the current phase, which started when the previous one ended.
+     */
+    synchronized void mark(String phase) {
+        long now = System.nanoTime();
+        phases.merge(phase, now - lastNanos, Long::sum);
+        lastNanos = now;
+    }
+
+    /**
+     * Marks the first call to complete as the last phase and logs the report; later calls pass
+     * through untouched.
+     */
+    ClientInterceptor interceptor() {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                ClientCall<ReqT, RespT> call = next.newCall(method, callOptions);
+                if (reported) {
+                    return call;
+                }
+                return new SimpleForwardingClientCall<ReqT, RespT>(call) {
+                    @Override
+                    public void start(Listener<RespT> responseListener, Metadata headers) {
+                        super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+                            @Override
+                            public void onClose(Status status, Metadata trailers) {
+                                firstCall(method.getBareMethodName());
+                                super.onClose(status, trailers);
+                            }
+                        }, headers);
+                    }
+                };
+            }
+        };
+    }
+
+    private synchronized void firstCall(String method) {
+        if (reported) {
+            return;
+        }
+        reported = true;
+        mark("first call (" + method + ")");
+        long jvmNanos = ManagementFactory.getRuntimeMXBean().getUptime() * 1_000_000L - (System.nanoTime() - startNanos);
+        StringBuilder report = new StringBuilder(String.format("%-40s %9s%n", "phase", "ms"))
+                .append(String.format("%-40s %9.1f%n", "jvm start, until Main", jvmNanos / 1e6));
+        long total = jvmNanos;
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            report.append(String.format("%-40s %9.1f%n", phase.getKey(), phase.getValue() / 1e6));
+            total += phase.getValue();
+        }
+        report.append(String.format("%-40s %9.1f", "total", total / 1e6));
+        logger.warn("Startup:\n{}", report);
+    }
+}
@@ -0,0 +1,51 @@
+package io.token.sample.rpc.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The functional checks {@link Main} runs against a bank, as {@link Operation}s, for runs that
+ * only need pass/fail and latency rather than the logged requests and responses.
+ */
+final class Suite {
+    private static final Logger logger = LoggerFactory.getLogger(Suite.class);
+
+    static final List<Operation> CHECKS = Collections.unmodifiableList(Arrays.asList(
+            Operation.HEALTH_CHECK,
+            Operation.TRANSFER,
+            Operation.GET_TRANSFER_STATUS,
+            Operation.MINIMAL_TRANSFER,
+            Operation.CREATE_BULK_TRANSFER,
+            Operation.GET_BALANCE,
+            Operation.GET_ACCOUNT,
+            Operation.GET_TRANSACTIONS));
+
+    private Suite() {
+    }
+
+    /**
+     * Runs every check once, in order, recording latency and failures into {@code stats}.
+     *
+     * @return the number of failed checks
+     */
+    static int run(BankStubs stubs, LatencyStats stats) {
+        int failed = 0;
+        for (Operation check : CHECKS) {
+            long start = System.nanoTime();
+            try {
+                check.call(stubs);
+                stats.record(check.methodName, System.nanoTime() - start, false);
+            } catch (RuntimeException e) {
+                stats.record(check.methodName, System.nanoTime() - start, true);
+                logger.warn("{}: {} failed: {}", stubs.bankId, check.methodName, e.getMessage());
+                failed++;
+            }
+        }
+        stats.stop();
+        return failed;
+    }
+}
@@ -0,0 +1,198 @@
+package io.token.sample.rpc.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates unique, well-formed Token-style identifiers and account details, so that repeated load
+ * is not deduplicated by the bank. Not thread-safe: give every worker thread its own instance with
+ * its own {@code stream}; instances never share state, so there is no contention.
+ *
+ * <p>Every id encodes {@code (stream, counter)} through a bijective 64-bit mix keyed by the seed, so
+ * ids are unique across all streams of a seed and the same seed and stream always produce the same
+ * sequence. Ref ids are shorter, and are unique across the first 36^5 (about 60 million) streams.
+ * Where one generator per thread does not fit, e.g. a thread per call, {@link #forCall(long)} gives
+ * each call its own range of the stream's counter.
+ *
+ * <p>Bodies are base58, like real ids: {@code t:<44 chars>:<15 chars>} for transfers, {@code tt:}
+ * for tokens (consents) and {@code bt:} for bulk transfers. Each id costs one {@code String}; the
+ * work buffer is reused.
+ */
+final class SyntheticIds {
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticIds.class);
+
+    private static final char[] BASE58 = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+    private static final char[] BASE36 = "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
+    /** Base58 digits needed for an unsigned 64-bit value: 58^11 > 2^64. */
+    private static final int WORD_CHARS = 11;
+    private static final int BODY_CHARS = 4 * WORD_CHARS;
+    private static final int SUFFIX_CHARS = 15;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    /** Base36 digits of the counter word of a ref id: 36^13 > 2^64. */
+    private static final int REF_COUNTER_CHARS = 13;
+    private static final int REF_STREAM_CHARS = 5;
+    private static final long REF_STREAMS = 36L * 36 * 36 * 36 * 36;
+    /** Ids one {@link #forCall(long)} generator can make before running into the next call's. */
+    private static final int CALL_BITS = 20;
+
+    private final long key;
+    private final int stream;
+    /** Identifies the stream in every id; constant per instance. */
+    private final long streamWord;
+    private final char[] suffix = new char[SUFFIX_CHARS];
+    private final char[] buffer = new char[3 + BODY_CHARS + 1 + SUFFIX_CHARS];
+    private long counter;
+    private long random;
+
+    SyntheticIds(long seed, int stream) {
+        this.key = mix(seed);
+        this.stream = stream;
+        this.streamWord = mix(mix(key) ^ stream);
+        this.random = mix(streamWord + GOLDEN_GAMMA);
+        char[] word = new char[WORD_CHARS];
+        encode(mix(streamWord ^ GOLDEN_GAMMA), word, 0);
+        System.arraycopy(word, 0, suffix, 0, WORD_CHARS);
+        encode(mix(streamWord + key), word, 0);
+        System.arraycopy(word, 0, suffix, WORD_CHARS, SUFFIX_CHARS - WORD_CHARS);
+    }
+
+    private SyntheticIds(SyntheticIds parent, long call) {
+        this.key = parent.key;
+        this.stream = parent.stream;
+        this.streamWord = parent.streamWord;
+        System.arraycopy(parent.suffix, 0, suffix, 0, SUFFIX_CHARS);
+        this.counter = call << CALL_BITS;
+        this.random = mix(parent.streamWord + GOLDEN_GAMMA) ^ mix(call);
+    }
+
+    /**
+     * @return a generator of the same stream for call number {@code call}, which continues the
+     *     stream's counter from {@code call * 2^20}, so different calls never make the same ids
+     */
+    SyntheticIds forCall(long call) {
+        return new SyntheticIds(this, call);
+    }
+
+    /**
+     * @return a generator for {@code stream} seeded by {@code --seed}, or {@code null} unless
+     *     {@code --unique-ids} is given
+     */
+    static SyntheticIds fromArgs(Args args, int stream) {
+        return args.has("unique-ids") ? new SyntheticIds(args.getLong("seed", 0), stream) : null;
+    }
+
+    /**
+     * Fixes {@code --seed} to a clock-derived value if {@code --unique-ids} is given without one, and
+     * logs it so that the run can be repeated with the same ids.
+     */
+    static Args withSeed(Args args) {
+        if (!args.has("unique-ids")) {
+            return args;
+        }
+        Args seeded = args.has("seed") ? args : args.with("seed", Long.toString(mix(System.nanoTime() ^ System.currentTimeMillis())));
+        logger.warn("Generating unique ids with --seed={}", seeded.get("seed", null));
+        return seeded;
+    }
+
+    /** {@code t:...}, a transfer id. */
+    String transferId() {
+        return id("t:");
+    }
+
+    /** {@code tt:...}, a token id, used as the consent id of a transfer. */
+    String tokenId() {
+        return id("tt:");
+    }
+
+    /** {@code bt:...}, a bulk transfer id. */
+    String bulkTransferId() {
+        return id("bt:");
+    }
+
+    /**
+     * An 18 character lowercase reference, like the token ref ids of the sample requests: the
+     * stream's next unique word, then the stream, scrambled by an odd multiplier that is not a
+     * multiple of 3, which is a bijection modulo 36^5.
+     */
+    String refId() {
+        long a = next();
+        long b = Long.remainderUnsigned(Integer.toUnsignedLong(stream) * 0x9e3779b1L, REF_STREAMS);
+        for (int i = 0; i < REF_COUNTER_CHARS; i++) {
+            buffer[i] = BASE36[(int) Long.remainderUnsigned(a, 36)];
+            a = Long.divideUnsigned(a, 36);
+        }
+        for (int i = REF_COUNTER_CHARS; i < REF_COUNTER_CHARS + REF_STREAM_CHARS; i++) {
+            buffer[i] = BASE36[(int) (b % 36)];
+            b /= 36;
+        }
+        return new String(buffer, 0, REF_COUNTER_CHARS + REF_STREAM_CHARS);
+    }
+
+    /** Six digits. */
+    String sortCode() {
+        return digits(6, 1_000_000);
+    }
+
+    /** Eight digits. */
+    String accountNumber() {
+        return digits(8, 100_000_000);
+    }
+
+    /** An amount from 0.01 to 100.00 in whole pennies, e.g. {@code 12.34}. */
+    String amount() {
+        long pennies = 1 + Long.remainderUnsigned(nextRandom(), 10_000);
+        return Amounts.format(pennies * 100);
+    }
+
+    private String digits(int length, long bound) {
+        long value = Long.remainderUnsigned(nextRandom(), bound);
+        for (int i = length - 1; i >= 0; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(buffer, 0, length);
+    }
+
+    private String id(String prefix) {
+        int pos = prefix.length();
+        prefix.getChars(0, pos, buffer, 0);
+        // The counter and stream words make the id unique, the rest only fill the body out to the usual length
+        encode(next(), buffer, pos);
+        encode(streamWord, buffer, pos + WORD_CHARS);
+        encode(nextRandom(), buffer, pos + 2 * WORD_CHARS);
+        encode(nextRandom(), buffer, pos + 3 * WORD_CHARS);
+        pos += BODY_CHARS;
+        buffer[pos++] = ':';
+        System.arraycopy(suffix, 0, buffer, pos, SUFFIX_CHARS);
+        return new String(buffer, 0, pos + SUFFIX_CHARS);
+    }
+
+    /** The next unique word of this stream. */
+    private long next() {
+        return mix(key ^ counter++);
+    }
+
+    private long nextRandom() {
+        random += GOLDEN_GAMMA;
+        return mix(random);
+    }
+
+    /**
+     * Writes {@code value} as exactly {@link #WORD_CHARS} base58 digits, most significant first.
+     */
+    private static void encode(long value, char[] out, int offset) {
+        for (int i = offset + WORD_CHARS - 1; i >= offset; i--) {
+            out[i] = BASE58[(int) Long.remainderUnsigned(value, 58)];
+            value = Long.divideUnsigned(value, 58);
+        }
+    }
+
+    /**
+     * The SplitMix64 finalizer, a bijection on 64-bit values.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -24,324 +24,286 @@ class TestRequests {
     private static final String testAisConsentId = "ta:9tJNYhJ1a4NxPhtgsCqWcLiVGpXJTYjyBUZcr3bNwu9A:5zKtXEAq";
     private static final String psuAccountPayload = "zEkDvb9tgJUPfOCk1AbTsbW/CBOSXsnAVOMe6qKkaM8=|m:2X7zH9tFewVRPNQvqHUNycmShdb6:5zKtXEAq";
 
+    /*
+     * Shared sub-messages. Protobuf messages are immutable, so they are built once and reused by
+     * every request (and every thread) instead of being rebuilt on each call.
+     */
+    private static final AccountFeatures ACCOUNT_FEATURES = AccountFeatures.newBuilder()
+            .setSupportsInformation(true)
+            .setSupportsSendPayment(true)
+            .setSupportsReceivePayment(true)
+            .build();
+
+    private static final BankAccount SOURCE_ACCOUNT = BankAccount.newBuilder()
+            .setAccountFeatures(ACCOUNT_FEATURES)
+            .setCustom(BankAccount.Custom.newBuilder()
+                    .setPayload("KrOojigVsGkuaSL12P37mLW/CBOSXsnAVOMe6qKkaM8=|m:2X7zH9tFewVRPNQvqHUNycmShdb6:5zKtXEAq")
+                    .setBankId("coop-sit2")
+                    .build())
+            .build();
+
+    private static final TransferInstructionsProtos.CustomerData CUSTOMER_DATA = TransferInstructionsProtos.CustomerData.newBuilder()
+            .addLegalNames( "Southside")
+            .setAddress(AddressProtos.Address.newBuilder()
+                    .setHouseNumber("10")
+                    .setHouseName("xyz")
+                    .setFlats("1")
+                    .setConscriptionNumber("1")
+                    .setStreet("Test Street")
+                    .setPlace("15 Testgate")
+                    .setPostCode("WC1B 2EB")
+                    .setCity("London")
+                    .setCountry("GB")
+                    .setFull("10 John Street, London WC1N")
+                    .setHamlet("xyz")
+                    .setSuburb("xyc")
+                    .setSubdistrict("xyz")
+                    .setDistrict("London")
+                    .setProvince("xyz")
+                    .setState("UK")
+                    .build())
+            .build();
+
+    private static final TransferInstructionsProtos.TransferDestination TRANSFER_DESTINATION = TransferInstructionsProtos.TransferDestination.newBuilder()
+            .setFasterPayments(TransferInstructionsProtos.TransferDestination.FasterPayments.newBuilder()
+                    .setAccountNumber("12345678")
+                    .setSortCode("123456")
+                    .build())
+            .setCustomerData(CUSTOMER_DATA)
+            .build();
+
+    private static final TransferInstructionsProtos.TransferInstructions TRANSFER_INSTRUCTIONS = TransferInstructionsProtos.TransferInstructions.newBuilder()
+            .setSource(TransferInstructionsProtos.TransferEndpoint.newBuilder()
+                    .setAccount(SOURCE_ACCOUNT)
+                    .build())
+            .addTransferDestinations(TRANSFER_DESTINATION)
+            .build();
+
+    private static final String DEFAULT_CURRENCY = "GBP";
+    private static final MoneyProtos.Money DEFAULT_AMOUNT = amount("1.9900");
+    private static final String DEFAULT_CONSENT_ID = "tt:C9JaUJL7AgdfowvhK7KpXxwTkHqLYW119FV6UctsUokC:3VMUBNCZMURCaZw";
+    private static final String DEFAULT_TOKEN_REF_ID = "ot33poxr5d3ohgb5os";
+
+    private static final TransferRequest TRANSFER_TEMPLATE = TransferRequest.newBuilder()
+            .setTransferId(testTransferId)
+            .setRequestedAmount(DEFAULT_AMOUNT)
+            .setTransactionAmount(DEFAULT_AMOUNT)
+            .setSource(SOURCE_ACCOUNT)
+            .addDestinations(TransferInstructionsProtos.TransferEndpoint.newBuilder()
+                    .setAccount(BankAccount.newBuilder().setFasterPayments(BankAccount.FasterPayments.newBuilder()
+                            .setAccountNumber("12345678")
+                            .setSortCode("123456")
+                            .build()).build())
+                    .setCustomerData(CUSTOMER_DATA)
+                    .build())
+            .setDescription("southside.com.noverifyQSB4X")
+            .setTokenRefId(DEFAULT_TOKEN_REF_ID)
+            .setMetadata(TransferInstructionsProtos.TransferInstructions.Metadata.newBuilder()
+                    .build())
+            .setTokenInitiatorId("m:test")
+            .addTransferDestinations(TRANSFER_DESTINATION)
+            .setTransferInstructions(TRANSFER_INSTRUCTIONS)
+            .setConsentId(DEFAULT_CONSENT_ID)
+            .setRemittanceReference("abcd1234")
+            .setReturnRefundAccount(true)
+            .build();
+
+    private static final TransferRequest MINIMAL_TRANSFER_TEMPLATE = TransferRequest.newBuilder()
+            .setTransferId("t:9zdwiPVSTfyetJJx58CGA5juDfjmKeyjEC7V2SQBJZtH:3VMUBNCZMURCaZw")
+            .setTransactionAmount(DEFAULT_AMOUNT)
+            .setDescription("southside.com.noverifyQSB4X")
+            .setTokenRefId(DEFAULT_TOKEN_REF_ID)
+            .setTokenInitiatorId("m:test")
+            .setTransferInstructions(TRANSFER_INSTRUCTIONS)
+            .setConsentId(DEFAULT_CONSENT_ID)
+            .setRemittanceReference("abcd1234")
+            .setReturnRefundAccount(true)
+            .build();
+
+    private static final BankAccount PSU_ACCOUNT = BankAccount.newBuilder()
+            .setAccountFeatures(ACCOUNT_FEATURES)
+            .setCustom(BankAccount.Custom.newBuilder()
+                    .setBankId("coop-sit2")
+                    .setPayload(psuAccountPayload)
+                    .build())
+            .build();
+
+    private static final TransferInstructionsProtos.TransferEndpoint PSU_ENDPOINT = TransferInstructionsProtos.TransferEndpoint.newBuilder()
+            .setAccount(PSU_ACCOUNT)
+            .setBankId("coop-sit2")
+            .build();
+
+    private static final CreateBulkTransferRequest BULK_TRANSFER_TEMPLATE = CreateBulkTransferRequest.newBuilder()
+            .setTokenBulkTransferId("bt:C9JaUJL7AgdfowvhK7KpXxwTkHqLYW119FV6UctsUokC:3VMUBNCZMURCaZw")// Token reference for the bulk transfer
+            .setRefId("ghnvs7ha29bsb9m0v9")
+            .setTokenInitiatorId("m:48KR5bH9xco7DZ59FuWaiviLcdnC:5zKtXEAq")// ID of member who requested token creation
+            .setPayload(TokenProtos.BulkTransferBody.newBuilder()
+                    .addTransfers(TokenProtos.BulkTransferBody.Transfer.newBuilder()
+                            .setAmount("1.99")
+                            .setCurrency("GBP")
+                            .setRefId("2")
+                            .setDescription("test transfer")
+                            .setDestination(TransferInstructionsProtos.TransferDestination.newBuilder()
+                                    .setFasterPayments(TransferInstructionsProtos.TransferDestination.FasterPayments.newBuilder()
+                                            .setAccountNumber("55656666")
+                                            .setSortCode("400400")
+                                            .build())
+                                    .setCustomerData(TransferInstructionsProtos.CustomerData.newBuilder()
+                                            .addLegalNames("Southside")
+                                            .setAddress(AddressProtos.Address.newBuilder()
+                                                    .setHouseNumber("10")
+                                                    .setHouseName("xyz")
+                                                    .setFlats("1")
+                                                    .setConscriptionNumber("1")
+                                                    .setStreet("John Street")
+                                                    .setPlace("15 Bishopsgate")
+                                                    .setPostCode("WC1N 2EB")
+                                                    .setCity("London")
+                                                    .setCountry("GB")
+                                                    .setFull("10 John Street, London, WC1N")
+                                                    .setHamlet("xyz")
+                                                    .setSuburb("xyz")
+                                                    .setSubdistrict("xyz")
+                                                    .setDistrict("xyz")
+                                                    .setProvince("xyz")
+                                                    .setState("UK")
+                                                    .build())
+                                            .build())
+                                    .build())
+                            .build())
+                    .setTotalAmount("1.99")
+                    .setSource(PSU_ENDPOINT)
+                    .build())
+            .setSource(PSU_ACCOUNT)
+            .setDescription("southside.com.noverifyICJON")
+            .setSourceAccount(PSU_ENDPOINT)
+            .setConsentId(DEFAULT_CONSENT_ID)
+            .build();
+
+    private static final GetBalanceRequest GET_BALANCE_REQUEST = GetBalanceRequest.newBuilder()
+            .setConsentId(testAisConsentId)
+            .setAccount(SOURCE_ACCOUNT)
+            .build();
+
+    private static final GetAccountRequest GET_ACCOUNT_REQUEST = GetAccountRequest.newBuilder()
+            .setConsentId(testAisConsentId)
+            .setAccount(SOURCE_ACCOUNT)
+            .build();
+
+    private static final GetTransactionsRequest GET_TRANSACTIONS_REQUEST = GetTransactionsRequest.newBuilder()
+            .setConsentId(testAisConsentId)
+            .setLimit(10)
+            .setAccount(SOURCE_ACCOUNT)
+            .build();
+
     public static TransferRequest transferRequest() {
-        return TransferRequest.newBuilder()
-                .setTransferId(testTransferId)
-                .setRequestedAmount(MoneyProtos.Money.newBuilder()
-                        .setCurrency("GBP")
-                        .setValue("1.9900")
-                        .build())
-                .setTransactionAmount(MoneyProtos.Money.newBuilder()
-                        .setCurrency("GBP")
-                        .setValue("1.9900")
-                        .build())
-                .setSource(BankAccount.newBuilder()
-                        .setAccountFeatures(AccountFeatures.newBuilder()
-                                .setSupportsInformation(true)
-                                .setSupportsSendPayment(true)
-                                .setSupportsReceivePayment(true)
-                                .build())
-                        .setCustom(BankAccount.Custom.newBuilder()
-                                .setPayload("KrOojigVsGkuaSL12P37mLW/CBOSXsnAVOMe6qKkaM8=|m:2X7zH9tFewVRPNQvqHUNycmShdb6:5zKtXEAq")
-                                .setBankId("coop-sit2")
-                                .build())
-                        .build())
-                .addDestinations(TransferInstructionsProtos.TransferEndpoint.newBuilder()
-                        .setAccount(BankAccount.newBuilder().setFasterPayments(BankAccount.FasterPayments.newBuilder()
-                                .setAccountNumber("12345678")
-                                .setSortCode("123456")
-                                .build()).build())
-                        .setCustomerData(TransferInstructionsProtos.CustomerData.newBuilder()
-                                .addLegalNames( "Southside")
-                                .setAddress(AddressProtos.Address.newBuilder()
-                                        .setHouseNumber("10")
-                                        .setHouseName("xyz")
-                                        .setFlats("1")
-                                        .setConscriptionNumber("1")
-                                        .setStreet("Test Street")
-                                        .setPlace("15 Testgate")
-                                        .setPostCode("WC1B 2EB")
-                                        .setCity("London")
-                                        .setCountry("GB")
-                                        .setFull("10 John Street, London WC1N")
-                                        .setHamlet("xyz")
-                                        .setSuburb("xyc")
-                                        .setSubdistrict("xyz")
-                                        .setDistrict("London")
-                                        .setProvince("xyz")
-                                        .setState("UK")
-                                        .build())
-                                .build())
-                        .build())
-                .setDescription("southside.com.noverifyQSB4X")
-                .setTokenRefId("ot33poxr5d3ohgb5os")
-                .setMetadata(TransferInstructionsProtos.TransferInstructions.Metadata.newBuilder()
-                        .build())
-                .setTokenInitiatorId("m:test")
-                .addTransferDestinations(TransferInstructionsProtos.TransferDestination.newBuilder()
-                        .setFasterPayments(TransferInstructionsProtos.TransferDestination.FasterPayments.newBuilder()
-                                .setAccountNumber("12345678")
-                                .setSortCode("123456")
-                                .build())
-                        .setCustomerData(TransferInstructionsProtos.CustomerData.newBuilder()
-                                .addLegalNames( "Southside")
-                                .setAddress(AddressProtos.Address.newBuilder()
-                                        .setHouseNumber("10")
-                                        .setHouseName("xyz")
-                                        .setFlats("1")
-                                        .setConscriptionNumber("1")
-                                        .setStreet("Test Street")
-                                        .setPlace("15 Testgate")
-                                        .setPostCode("WC1B 2EB")
-                                        .setCity("London")
-                                        .setCountry("GB")
-                                        .setFull("10 John Street, London WC1N")
-                                        .setHamlet("xyz")
-                                        .setSuburb("xyc")
-                                        .setSubdistrict("xyz")
-                                        .setDistrict("London")
-                                        .setProvince("xyz")
-                                        .setState("UK")
-                                        .build())
-                                .build())
-                        .build())
-                .setTransferInstructions(TransferInstructionsProtos.TransferInstructions.newBuilder()
-                        .setSource(TransferInstructionsProtos.TransferEndpoint.newBuilder().setAccount(BankAccount.newBuilder()
-                                        .setAccountFeatures(AccountFeatures.newBuilder()
-                                                .setSupportsInformation(true)
-                                                .setSupportsSendPayment(true)
-                                                .setSupportsReceivePayment(true)
-                                                .build())
-                                        .setCustom(BankAccount.Custom.newBuilder()
-                                                .setPayload("KrOojigVsGkuaSL12P37mLW/CBOSXsnAVOMe6qKkaM8=|m:2X7zH9tFewVRPNQvqHUNycmShdb6:5zKtXEAq")
-                                                .setBankId("coop-sit2")
-                                                .build())
-                                        .build())
+        return TRANSFER_TEMPLATE;
+    }
 
-                                .build())
-                        .addTransferDestinations(TransferInstructionsProtos.TransferDestination.newBuilder()
-                                .setFasterPayments(TransferInstructionsProtos.TransferDestination.FasterPayments.newBuilder()
-                                        .setAccountNumber("12345678")
-                                        .setSortCode("123456")
-                                        .build())
-                                .setCustomerData(TransferInstructionsProtos.CustomerData.newBuilder()
-                                        .addLegalNames( "Southside")
-                                        .setAddress(AddressProtos.Address.newBuilder()
-                                                .setHouseNumber("10")
-                                                .setHouseName("xyz")
-                                                .setFlats("1")
-                                                .setConscriptionNumber("1")
-                                                .setStreet("Test Street")
-                                                .setPlace("15 Testgate")
-                                                .setPostCode("WC1B 2EB")
-                                                .setCity("London")
-                                                .setCountry("GB")
-                                                .setFull("10 John Street, London WC1N")
-                                                .setHamlet("xyz")
-                                                .setSuburb("xyc")
-                                                .setSubdistrict("xyz")
-                                                .setDistrict("London")
-                                                .setProvince("xyz")
-                                                .setState("UK")
-                                                .build())
-                                        .build())
-                                .build()))
-                .setConsentId("tt:C9JaUJL7AgdfowvhK7KpXxwTkHqLYW119FV6UctsUokC:3VMUBNCZMURCaZw")
-                .setRemittanceReference("abcd1234")
-                .setReturnRefundAccount(true)
+    /**
+     * The {@link #transferRequest()} shape with the fields a bank deduplicates on replaced.
+     * Only the top-level message is copied; all sub-messages are shared with the template.
+     *
+     * @param amount the amount in {@code GBP}, e.g. {@code "1.9900"}
+     */
+    public static TransferRequest transferRequest(String transferId, String tokenRefId, String amount, String consentId) {
+        MoneyProtos.Money money = amount(amount);
+        return TRANSFER_TEMPLATE.toBuilder()
+                .setTransferId(transferId)
+                .setTokenRefId(tokenRefId)
+                .setRequestedAmount(money)
+                .setTransactionAmount(money)
+                .setConsentId(consentId)
                 .build();
     }
 
     public static TransferRequest minimalTransferRequest() {
-        return TransferRequest.newBuilder()
-                .setTransferId("t:9zdwiPVSTfyetJJx58CGA5juDfjmKeyjEC7V2SQBJZtH:3VMUBNCZMURCaZw")
-                .setTransactionAmount(MoneyProtos.Money.newBuilder()
-                        .setCurrency("GBP")
-                        .setValue("1.9900")
-                        .build())
-                .setDescription("southside.com.noverifyQSB4X")
-                .setTokenRefId("ot33poxr5d3ohgb5os")
-                .setTokenInitiatorId("m:test")
-                .setTransferInstructions(TransferInstructionsProtos.TransferInstructions.newBuilder()
-                        .setSource(TransferInstructionsProtos.TransferEndpoint.newBuilder().setAccount(BankAccount.newBuilder()
-                                        .setAccountFeatures(AccountFeatures.newBuilder()
-                                                .setSupportsInformation(true)
-                                                .setSupportsSendPayment(true)
-                                                .setSupportsReceivePayment(true)
-                                                .build())
-                                        .setCustom(BankAccount.Custom.newBuilder()
-                                                .setPayload("KrOojigVsGkuaSL12P37mLW/CBOSXsnAVOMe6qKkaM8=|m:2X7zH9tFewVRPNQvqHUNycmShdb6:5zKtXEAq")
-                                                .setBankId("coop-sit2")
-                                                .build())
-                                        .build())
-                                .build())
-                        .addTransferDestinations(TransferInstructionsProtos.TransferDestination.newBuilder()
-                                .setFasterPayments(TransferInstructionsProtos.TransferDestination.FasterPayments.newBuilder()
-                                        .setAccountNumber("12345678")
-                                        .setSortCode("123456")
-                                        .build())
-                                .setCustomerData(TransferInstructionsProtos.CustomerData.newBuilder()
-                                        .addLegalNames( "Southside")
-                                        .setAddress(AddressProtos.Address.newBuilder()
-                                                .setHouseNumber("10")
-                                                .setHouseName("xyz")
-                                                .setFlats("1")
-                                                .setConscriptionNumber("1")
-                                                .setStreet("Test Street")
-                                                .setPlace("15 Testgate")
-                                                .setPostCode("WC1B 2EB")
-                                                .setCity("London")
-                                                .setCountry("GB")
-                                                .setFull("10 John Street, London WC1N")
-                                                .setHamlet("xyz")
-                                                .setSuburb("xyc")
-                                                .setSubdistrict("xyz")
-                                                .setDistrict("London")
-                                                .setProvince("xyz")
-                                                .setState("UK")
-                                                .build())
-                                        .build())
-                                .build()))
-                .setConsentId("tt:C9JaUJL7AgdfowvhK7KpXxwTkHqLYW119FV6UctsUokC:3VMUBNCZMURCaZw")
-                .setRemittanceReference("abcd1234")
-                .setReturnRefundAccount(true)
+        return MINIMAL_TRANSFER_TEMPLATE;
+    }
+
+    /**
+     * The {@link #minimalTransferRequest()} shape with the fields a bank deduplicates on replaced.
+     *
+     * @param amount the amount in {@code GBP}, e.g. {@code "1.9900"}
+     */
+    public static TransferRequest minimalTransferRequest(String transferId, String tokenRefId, String amount, String consentId) {
+        return MINIMAL_TRANSFER_TEMPLATE.toBuilder()
+                .setTransferId(transferId)
+                .setTokenRefId(tokenRefId)
+                .setTransactionAmount(amount(amount))
+                .setConsentId(consentId)
                 .build();
     }
 
     public static GetBalanceRequest getBalanceRequest() {
-        return GetBalanceRequest.newBuilder()
-                .setConsentId(testAisConsentId)
-                .setAccount(BankAccount.newBuilder()
-                        .setAccountFeatures(AccountFeatures.newBuilder()
-                                .setSupportsInformation(true)
-                                .setSupportsSendPayment(true)
-                                .setSupportsReceivePayment(true)
-                                .build())
-                        .setCustom(BankAccount.Custom.newBuilder()
-                                .setPayload("KrOojigVsGkuaSL12P37mLW/CBOSXsnAVOMe6qKkaM8=|m:2X7zH9tFewVRPNQvqHUNycmShdb6:5zKtXEAq")
-                                .setBankId("coop-sit2")
-                                .build())
-                        .build())
-                .build();
+        return GET_BALANCE_REQUEST;
     }
 
     public static GetAccountRequest getAccountRequest() {
-        return GetAccountRequest.newBuilder()
-                .setConsentId(testAisConsentId)
-                .setAccount(BankAccount.newBuilder()
-                        .setAccountFeatures(AccountFeatures.newBuilder()
-                                .setSupportsInformation(true)
-                                .setSupportsSendPayment(true)
-                                .setSupportsReceivePayment(true)
-                                .build())
-                        .setCustom(BankAccount.Custom.newBuilder()
-                                .setPayload("KrOojigVsGkuaSL12P37mLW/CBOSXsnAVOMe6qKkaM8=|m:2X7zH9tFewVRPNQvqHUNycmShdb6:5zKtXEAq")
-                                .setBankId("coop-sit2")
-                                .build())
-                        .build())
-                .build();
+        return GET_ACCOUNT_REQUEST;
     }
 
     public static GetTransactionsRequest getTransactionsRequest() {
-        return GetTransactionsRequest.newBuilder()
-                .setConsentId(testAisConsentId)
-                .setLimit(10)
-                .setAccount(BankAccount.newBuilder()
-                        .setAccountFeatures(AccountFeatures.newBuilder()
-                                .setSupportsInformation(true)
-                                .setSupportsSendPayment(true)
-                                .setSupportsReceivePayment(true)
-                                .build())
-                        .setCustom(BankAccount.Custom.newBuilder()
-                                .setPayload("KrOojigVsGkuaSL12P37mLW/CBOSXsnAVOMe6qKkaM8=|m:2X7zH9tFewVRPNQvqHUNycmShdb6:5zKtXEAq")
-                                .setBankId("coop-sit2")
-                                .build())
-                        .build())
-                .build();
+        return GET_TRANSACTIONS_REQUEST;
     }
 
     public static CreateBulkTransferRequest bulkTransferRequest() {
-        return CreateBulkTransferRequest.newBuilder()
-                .setTokenBulkTransferId("bt:C9JaUJL7AgdfowvhK7KpXxwTkHqLYW119FV6UctsUokC:3VMUBNCZMURCaZw")// Token reference for the bulk transfer
-                .setRefId("ghnvs7ha29bsb9m0v9")
-                .setTokenInitiatorId("m:48KR5bH9xco7DZ59FuWaiviLcdnC:5zKtXEAq")// ID of member who requested token creation
-                .setPayload(TokenProtos.BulkTransferBody.newBuilder()
-                        .addTransfers(TokenProtos.BulkTransferBody.Transfer.newBuilder()
-                                .setAmount("1.99")
-                                .setCurrency("GBP")
-                                .setRefId("2")
-                                .setDescription("test transfer")
-                                .setDestination(TransferInstructionsProtos.TransferDestination.newBuilder()
-                                        .setFasterPayments(TransferInstructionsProtos.TransferDestination.FasterPayments.newBuilder()
-                                                .setAccountNumber("55656666")
-                                                .setSortCode("400400")
-                                                .build())
-                                        .setCustomerData(TransferInstructionsProtos.CustomerData.newBuilder()
-                                                .addLegalNames("Southside")
-                                                .setAddress(AddressProtos.Address.newBuilder()
-                                                        .setHouseNumber("10")
-                                                        .setHouseName("xyz")
-                                                        .setFlats("1")
-                                                        .setConscriptionNumber("1")
-                                                        .setStreet("John Street")
-                                                        .setPlace("15 Bishopsgate")
-                                                        .setPostCode("WC1N 2EB")
-                                                        .setCity("London")
-                                                        .setCountry("GB")
-                                                        .setFull("10 John Street, London, WC1N")
-                                                        .setHamlet("xyz")
-                                                        .setSuburb("xyz")
-                                                        .setSubdistrict("xyz")
-                                                        .setDistrict("xyz")
-                                                        .setProvince("xyz")
-                                                        .setState("UK")
-                                                        .build())
-                                                .build())
-                                        .build())
-                                .build())
-                        .setTotalAmount("1.99")
-                        .setSource(TransferInstructionsProtos.TransferEndpoint.newBuilder()
-                                .setAccount(BankAccount.newBuilder()
-                                        .setAccountFeatures(AccountFeatures.newBuilder()
-                                                .setSupportsInformation(true)
-                                                .setSupportsSendPayment(true)
-                                                .setSupportsReceivePayment(true)
-                                                .build())
-                                        .setCustom(BankAccount.Custom.newBuilder()
-                                                .setBankId("coop-sit2")
-                                                .setPayload(psuAccountPayload)
-                                                .build())
-                                        .build())
-                                .setBankId("coop-sit2")
-                                .build())
+        return BULK_TRANSFER_TEMPLATE;
+    }
+
+    /**
+     * The {@link #bulkTransferRequest()} shape carrying {@code transfers} instead of the single
+     * sample transfer.
+     *
+     * @param totalAmount the sum of the transfers' amounts
+     */
+    public static CreateBulkTransferRequest bulkTransferRequest(String tokenBulkTransferId, Iterable<TokenProtos.BulkTransferBody.Transfer> transfers, String totalAmount) {
+        return BULK_TRANSFER_TEMPLATE.toBuilder()
+                .setTokenBulkTransferId(tokenBulkTransferId)
+                .setPayload(BULK_TRANSFER_TEMPLATE.getPayload().toBuilder()
+                        .clearTransfers()
+                        .addAllTransfers(transfers)
+                        .setTotalAmount(totalAmount)
                         .build())
-                .setSource(BankAccount.newBuilder()
-                        .setAccountFeatures(AccountFeatures.newBuilder()
-                                .setSupportsInformation(true)
-                                .setSupportsSendPayment(true)
-                                .setSupportsReceivePayment(true)
-                                .build())
-                        .setCustom(BankAccount.Custom.newBuilder()
-                                .setBankId("coop-sit2")
-                                .setPayload(psuAccountPayload)
+                .build();
+    }
+
+    /**
+     * The sample bulk transfer entry with its reference and amount replaced; the destination is
+     * shared with the template.
+     */
+    public static TokenProtos.BulkTransferBody.Transfer bulkTransfer(String refId, String amount) {
+        return BULK_TRANSFER_TEMPLATE.getPayload().getTransfers(0).toBuilder()
+                .setRefId(refId)
+                .setAmount(amount)
+                .build();
+    }
+
+    /**
+     * A bulk transfer entry paying {@code amount} to a Faster Payments account.
+     */
+    public static TokenProtos.BulkTransferBody.Transfer bulkTransfer(String refId, String amount, String sortCode, String accountNumber, String legalName) {
+        TokenProtos.BulkTransferBody.Transfer sample = BULK_TRANSFER_TEMPLATE.getPayload().getTransfers(0);
+        return sample.toBuilder()
+                .setRefId(refId)
+                .setAmount(amount)
+                .setDestination(sample.getDestination().toBuilder()
+                        .setFasterPayments(TransferInstructionsProtos.TransferDestination.FasterPayments.newBuilder()
+                                .setSortCode(sortCode)
+                                .setAccountNumber(accountNumber)
                                 .build())
-                        .build())
-                .setDescription("southside.com.noverifyICJON")
-                .setSourceAccount(TransferInstructionsProtos.TransferEndpoint.newBuilder()
-                        .setAccount(BankAccount.newBuilder()
-                                .setAccountFeatures(AccountFeatures.newBuilder()
-                                        .setSupportsInformation(true)
-                                        .setSupportsSendPayment(true)
-                                        .setSupportsReceivePayment(true)
-                                        .build())
-                                .setCustom(BankAccount.Custom.newBuilder()
-                                        .setBankId("coop-sit2")
-                                        .setPayload(psuAccountPayload)
-                                        .build())
+                        .setCustomerData(sample.getDestination().getCustomerData().toBuilder()
+                                .clearLegalNames()
+                                .addLegalNames(legalName)
                                 .build())
-                        .setBankId("coop-sit2")
                         .build())
-                .setConsentId("tt:C9JaUJL7AgdfowvhK7KpXxwTkHqLYW119FV6UctsUokC:3VMUBNCZMURCaZw")
+                .build();
+    }
+
+    private static MoneyProtos.Money amount(String value) {
+        return MoneyProtos.Money.newBuilder()
+                .setCurrency(DEFAULT_CURRENCY)
+                .setValue(value)
                 .build();
     }
 
@@ -351,4 +313,11 @@ class TestRequests {
                 .setTransactionId(testTransferTransactionId)
                 .build();
     }
+
+    public static GetTransferStatusRequest getTransferStatusRequest(String transferId, String transactionId) {
+        return GetTransferStatusRequest.newBuilder()
+                .setTransferId(transferId)
+                .setTransactionId(transactionId)
+                .build();
+    }
 }
@@ -0,0 +1,340 @@
+package io.token.sample.rpc.client;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the requests and responses of every call into preallocated, memory-mapped segment files
+ * ({@code --record=DIR}, {@code --record-segment-size=BYTES}, default 64MB), for
+ * {@link TrafficReplayer} to play back.
+ *
+ * <p>A segment starts with {@code int magic, int version, long startEpochMillis}, followed by frames
+ * of {@code int length, byte kind, long callId, long nanosSinceStart, short methodNameLength,
+ * methodName, message}, where {@code length} counts everything after itself and {@code message} is
+ * the serialized protobuf. A zero length ends the segment; the next segment continues the log.
+ *
+ * <p>Recording takes no lock. Each frame reserves its bytes in the current segment with a CAS on the
+ * segment's write offset and is then serialized straight into the mapped file by the calling thread,
+ * in parallel with the others, so recording costs a copy of the message and no system call. The
+ * next segment is created and mapped in the background while the current one fills; the thread whose
+ * frame no longer fits swaps it in, and the full segment is flushed and unmapped in the background
+ * once its last frame is written. A frame that finds the next segment not mapped yet is dropped
+ * rather than waiting, and counted. If writing fails, recording stops and calls go on.
+ */
+final class TrafficRecorder implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TrafficRecorder.class);
+
+    static final int MAGIC = 0x544b5252;
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER_BYTES = 16;
+    /** Bytes of a frame before the method name: length, kind, call id, timestamp, name length. */
+    static final int FRAME_HEADER_BYTES = 4 + 1 + 8 + 8 + 2;
+    static final byte REQUEST = 1;
+    static final byte RESPONSE = 2;
+
+    private final File dir;
+    private final int segmentSize;
+    private final long startNanos = System.nanoTime();
+    private final long startEpochMillis = System.currentTimeMillis();
+    private final AtomicLong callIds = new AtomicLong();
+    private final Map<String, byte[]> methodNames = new ConcurrentHashMap<>();
+    /** Maps, flushes and unmaps segments off the calling threads, in order. */
+    private final ExecutorService segments =
+            Executors.newSingleThreadExecutor(new DefaultThreadFactory("traffic-recorder", true));
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    /** The segment being written, or {@code null} once recording has stopped. */
+    private volatile Segment current;
+    /** The last segment, kept for {@link #close()}. */
+    private volatile Segment last;
+
+    TrafficRecorder(File dir, int segmentSize) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.current = new Segment(0, map(0));
+        this.last = current;
+    }
+
+    static TrafficRecorder fromArgs(Args args) throws IOException {
+        return new TrafficRecorder(
+                new File(args.get("record", "traffic")),
+                args.getInt("record-segment-size", 64 * 1024 * 1024));
+    }
+
+    static File segmentFile(File dir, int index) {
+        return new File(dir, String.format("traffic-%06d.seg", index));
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(dir, index), "rw")) {
+            // Truncated first, so that the bytes after the last frame read as a zero length
+            file.setLength(0);
+            file.setLength(segmentSize);
+            // The mapping stays valid after the file is closed
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(startEpochMillis);
+            return buffer;
+        }
+    }
+
+    ClientInterceptor interceptor() {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                byte[] name = methodNames.computeIfAbsent(method.getFullMethodName(), n -> n.getBytes(StandardCharsets.UTF_8));
+                return new RecordingCall<>(name, callIds.incrementAndGet(), next.newCall(method, callOptions));
+            }
+        };
+    }
+
+    private void record(byte kind, long callId, byte[] methodName, Object message) {
+        if (!(message instanceof MessageLite)) {
+            return;
+        }
+        MessageLite proto = (MessageLite) message;
+        long nanos = System.nanoTime() - startNanos;
+        int messageSize = proto.getSerializedSize();
+        int frameSize = FRAME_HEADER_BYTES + methodName.length + messageSize;
+        if (SEGMENT_HEADER_BYTES + frameSize + 4 > segmentSize) {
+            logger.warn("Not recording a {} byte frame, larger than a segment", frameSize);
+            return;
+        }
+        while (true) {
+            Segment segment = current;
+            if (segment == null) {
+                return;
+            }
+            segment.writers.incrementAndGet();
+            try {
+                if (segment != current) {
+                    // Swapped out since it was read; its writers may already have drained
+                    continue;
+                }
+                int offset = segment.reserve(frameSize);
+                if (offset < 0) {
+                    if (!rollOver(segment)) {
+                        dropped.increment();
+                        return;
+                    }
+                    continue;
+                }
+                ByteBuffer out = segment.buffer.duplicate();
+                out.position(offset);
+                out.putInt(frameSize - 4)
+                        .put(kind)
+                        .putLong(callId)
+                        .putLong(nanos)
+                        .putShort((short) methodName.length)
+                        .put(methodName);
+                CodedOutputStream coded = CodedOutputStream.newInstance(out);
+                proto.writeTo(coded);
+                coded.flush();
+                frames.increment();
+                return;
+            } catch (IOException | RuntimeException e) {
+                stop("Recording stopped after " + frames.sum() + " frames", e);
+                return;
+            } finally {
+                segment.writers.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Swaps in the segment after {@code full}, if it is mapped yet. Only one of the threads that
+     * find {@code full} full does it; the others wait the few instructions that takes.
+     *
+     * @return {@code false} if the frame is to be dropped, as the next segment is not mapped yet
+     */
+    private boolean rollOver(Segment full) {
+        if (!full.next.isDone()) {
+            return false;
+        }
+        if (!full.swapping.compareAndSet(false, true)) {
+            while (current == full) {
+                Thread.yield();
+            }
+            return true;
+        }
+        try {
+            MappedByteBuffer buffer = full.next.get();
+            // Only against close(), which must not see a segment installed after it stopped recording
+            synchronized (this) {
+                if (current != full) {
+                    return false;
+                }
+                Segment next = new Segment(full.index + 1, buffer);
+                last = next;
+                current = next;
+            }
+            segments.execute(() -> release(full));
+        } catch (ExecutionException e) {
+            stop("Recording stopped after " + frames.sum() + " frames", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop("Recording stopped after " + frames.sum() + " frames, interrupted", null);
+        }
+        return true;
+    }
+
+    private synchronized void stop(String message, Throwable cause) {
+        current = null;
+        if (failed.compareAndSet(false, true) && message != null) {
+            logger.warn(message, cause);
+        }
+    }
+
+    /**
+     * Flushes and unmaps {@code segment} once the frames reserved in it are written. Runs on the
+     * segment thread; writers that reserved their frames before the swap finish within microseconds.
+     */
+    private static void release(Segment segment) {
+        while (segment.writers.get() > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        release(segment.buffer);
+    }
+
+    private static void release(MappedByteBuffer buffer) {
+        buffer.force();
+        // Unmaps now rather than when the buffer is collected
+        PlatformDependent.freeDirectBuffer(buffer);
+    }
+
+    /**
+     * Flushes the current segment to disk and removes the unused next one. Segments keep their
+     * preallocated size.
+     */
+    @Override
+    public synchronized void close() {
+        Segment segment = last;
+        if (segments.isShutdown()) {
+            return;
+        }
+        stop(null, null);
+        segments.execute(() -> release(segment));
+        // Not cancelled: a map already running would go on and leave its file behind anyway
+        segments.shutdown();
+        File unused = segmentFile(dir, segment.index + 1);
+        try {
+            if (!segments.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Segments still being flushed after 30s");
+            }
+            if (segment.next.isDone()) {
+                release(segment.next.get());
+                if (!unused.delete()) {
+                    logger.warn("Could not delete unused {}", unused);
+                }
+            }
+        } catch (ExecutionException e) {
+            logger.warn("Could not map {}", unused, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.warn("Recorded {} frames into {} segments in {}{}", frames.sum(), segment.index + 1, dir,
+                dropped.sum() == 0 ? "" : ", dropped " + dropped.sum() + " waiting for the next segment");
+    }
+
+    /**
+     * One mapped segment file and the mapping of the one after it, started as it is installed.
+     */
+    private final class Segment {
+        final int index;
+        final MappedByteBuffer buffer;
+        final Future<MappedByteBuffer> next;
+        /** Offset of the next frame; only grows. */
+        final AtomicInteger position = new AtomicInteger(SEGMENT_HEADER_BYTES);
+        /** Threads between reading this segment as current and finishing their frame. */
+        final AtomicInteger writers = new AtomicInteger();
+        final AtomicBoolean swapping = new AtomicBoolean();
+
+        Segment(int index, MappedByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+            this.next = segments.submit(() -> map(index + 1));
+        }
+
+        /**
+         * @return the offset reserved for a frame of {@code size} bytes, or -1 if it does not fit
+         *     with the zero length that ends the segment
+         */
+        int reserve(int size) {
+            while (true) {
+                int offset = position.get();
+                if (offset + size + 4 > segmentSize) {
+                    return -1;
+                }
+                if (position.compareAndSet(offset, offset + size)) {
+                    return offset;
+                }
+            }
+        }
+    }
+
+    private final class RecordingCall<ReqT, RespT> extends SimpleForwardingClientCall<ReqT, RespT> {
+        private final byte[] methodName;
+        private final long callId;
+
+        RecordingCall(byte[] methodName, long callId, ClientCall<ReqT, RespT> delegate) {
+            super(delegate);
+            this.methodName = methodName;
+            this.callId = callId;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+                @Override
+                public void onMessage(RespT message) {
+                    record(RESPONSE, callId, methodName, message);
+                    super.onMessage(message);
+                }
+            }, headers);
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            record(REQUEST, callId, methodName, message);
+            super.sendMessage(message);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package io.token.sample.rpc.client;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.StreamObserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays the requests in a {@link TrafficRecorder} log ({@code --replay=DIR}) against a bank, keeping
+ * the recorded inter-arrival times divided by {@code --replay-speed} (default 1; {@code max} sends
+ * as fast as {@code --max-in-flight}, default 10000, allows).
+ *
+ * <p>Requests are sent as the recorded bytes, without parsing them, through a pass-through
+ * marshaller; responses are counted and discarded. The client's interceptors, such as the
+ * {@link MetadataInterceptor}, still apply. As for {@link OpenLoopLoad}, latency is measured from
+ * each request's intended send time.
+ */
+final class TrafficReplayer {
+    private static final Logger logger = LoggerFactory.getLogger(TrafficReplayer.class);
+
+    private static final MethodDescriptor.Marshaller<ByteBuffer> RAW_REQUEST = new MethodDescriptor.Marshaller<ByteBuffer>() {
+        @Override
+        public InputStream stream(ByteBuffer value) {
+            return new ByteBufferStream(value.duplicate());
+        }
+
+        @Override
+        public ByteBuffer parse(InputStream stream) {
+            throw new UnsupportedOperationException("Request-only marshaller: replayed requests are never parsed");
+        }
+    };
+
+    private static final MethodDescriptor.Marshaller<Long> DISCARDED_RESPONSE = new MethodDescriptor.Marshaller<Long>() {
+        @Override
+        public InputStream stream(Long value) {
+            throw new UnsupportedOperationException("Response-only marshaller: replay responses are never sent");
+        }
+
+        @Override
+        public Long parse(InputStream stream) {
+            try {
+                return ByteStreams.exhaust(stream);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final File dir;
+    private final double speed;
+    private final int maxInFlight;
+
+    TrafficReplayer(File dir, double speed, int maxInFlight) {
+        this.dir = dir;
+        this.speed = speed;
+        this.maxInFlight = maxInFlight;
+    }
+
+    static TrafficReplayer fromArgs(Args args) {
+        String speed = args.get("replay-speed", "1");
+        return new TrafficReplayer(
+                new File(args.get("replay", "traffic")),
+                speed.equals("max") ? Double.POSITIVE_INFINITY : Double.parseDouble(speed),
+                args.getInt("max-in-flight", 10_000));
+    }
+
+    /**
+     * Replays every recorded request on the calling thread, waits for outstanding calls and returns
+     * the latencies per method.
+     */
+    LatencyStats run(Channel channel) throws IOException, InterruptedException {
+        logger.warn("Replaying {} at {}x", dir, speed);
+        LatencyStats stats = new LatencyStats();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        Map<String, MethodDescriptor<ByteBuffer, Long>> methods = new HashMap<>();
+        long start = System.nanoTime();
+        long requests = 0;
+        long firstRecordedNanos = -1;
+        long maxLagNanos = 0;
+
+        for (int index = 0; TrafficRecorder.segmentFile(dir, index).isFile(); index++) {
+            ByteBuffer segment = map(TrafficRecorder.segmentFile(dir, index));
+            while (segment.remaining() >= 4) {
+                int length = segment.getInt();
+                if (length == 0) {
+                    break;
+                }
+                int frameEnd = segment.position() + length;
+                byte kind = segment.get();
+                segment.getLong(); // call id
+                long recordedNanos = segment.getLong();
+                byte[] name = new byte[segment.getShort()];
+                segment.get(name);
+                if (kind != TrafficRecorder.REQUEST) {
+                    segment.position(frameEnd);
+                    continue;
+                }
+                ByteBuffer message = segment.slice();
+                message.limit(frameEnd - segment.position());
+                segment.position(frameEnd);
+
+                if (firstRecordedNanos < 0) {
+                    firstRecordedNanos = recordedNanos;
+                }
+                long intended;
+                if (speed == Double.POSITIVE_INFINITY) {
+                    // As fast as the permits allow: the wait for one is not part of the call
+                    inFlight.acquire();
+                    intended = System.nanoTime();
+                } else {
+                    intended = start + (long) ((recordedNanos - firstRecordedNanos) / speed);
+                    long now = System.nanoTime();
+                    while (now < intended) {
+                        LockSupport.parkNanos(intended - now);
+                        now = System.nanoTime();
+                    }
+                    // Lag includes the wait for a permit, when --max-in-flight holds the replay back
+                    inFlight.acquire();
+                    maxLagNanos = Math.max(maxLagNanos, System.nanoTime() - intended);
+                }
+                MethodDescriptor<ByteBuffer, Long> method = methods.computeIfAbsent(
+                        new String(name, StandardCharsets.UTF_8), TrafficReplayer::rawMethod);
+                issue(channel, method, message, intended, stats, inFlight);
+                requests++;
+            }
+        }
+
+        if (!inFlight.tryAcquire(maxInFlight, 30, TimeUnit.SECONDS)) {
+            logger.warn("{} calls still outstanding after 30s", maxInFlight - inFlight.availablePermits());
+        }
+        stats.stop();
+        logger.warn("Replay finished:\n{}\nreplayed {} requests, max schedule lag {}ms",
+                stats.report(stats.elapsedNanos()), requests, String.format("%.3f", maxLagNanos / 1e6));
+        return stats;
+    }
+
+    private static void issue(Channel channel, MethodDescriptor<ByteBuffer, Long> method, ByteBuffer message,
+                              long intended, LatencyStats stats, Semaphore inFlight) {
+        String name = method.getBareMethodName();
+        try {
+            ClientCalls.asyncUnaryCall(channel.newCall(method, CallOptions.DEFAULT), message, new StreamObserver<Long>() {
+                @Override
+                public void onNext(Long responseBytes) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    stats.record(name, System.nanoTime() - intended, true);
+                    inFlight.release();
+                }
+
+                @Override
+                public void onCompleted() {
+                    stats.record(name, System.nanoTime() - intended, false);
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            stats.record(name, System.nanoTime() - intended, true);
+            inFlight.release();
+        }
+    }
+
+    private static MethodDescriptor<ByteBuffer, Long> rawMethod(String fullMethodName) {
+        return MethodDescriptor.<ByteBuffer, Long>newBuilder()
+                .setType(MethodDescriptor.MethodType.UNARY)
+                .setFullMethodName(fullMethodName)
+                .setRequestMarshaller(RAW_REQUEST)
+                .setResponseMarshaller(DISCARDED_RESPONSE)
+                .build();
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (buffer.getInt() != TrafficRecorder.MAGIC || buffer.getInt() != TrafficRecorder.VERSION) {
+                throw new IOException(file + " is not a version " + TrafficRecorder.VERSION + " traffic segment");
+            }
+            buffer.getLong(); // recording start
+            return buffer;
+        }
+    }
+
+    /**
+     * Reads a buffer without copying it first; {@link KnownLength} lets gRPC size the frame up front.
+     */
+    private static final class ByteBufferStream extends InputStream implements KnownLength {
+        private final ByteBuffer buffer;
+
+        ByteBufferStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
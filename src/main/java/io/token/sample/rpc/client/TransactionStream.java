@@ -0,0 +1,159 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.token.proto.bankapi.AccountServiceGrpc.AccountServiceStub;
+import io.token.proto.bankapi.Bankapi.GetTransactionsRequest;
+import io.token.proto.bankapi.Bankapi.GetTransactionsResponse;
+import io.token.proto.common.transaction.TransactionProtos.Transaction;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Iterates over all transactions of an account, following the page offsets returned by
+ * {@code GetTransactions}. Up to {@code prefetch} pages are fetched ahead of the consumer, so page
+ * N+1 is on its way while page N is being consumed, and at most {@code prefetch} pages are held in
+ * memory at a time.
+ *
+ * <p>Iteration stops at the first empty page, or when the bank returns no offset or the same offset
+ * again. A failed page ends the iteration with a {@link io.grpc.StatusRuntimeException}.
+ *
+ * <p>Not thread-safe: one consumer thread iterates, responses arrive on gRPC threads.
+ */
+final class TransactionStream implements Iterator<Transaction>, AutoCloseable {
+    private static final Object END = new Object();
+
+    private final AccountServiceStub accounts;
+    private final GetTransactionsRequest template;
+    private final int prefetch;
+    /** Fetched pages, then {@link #END} or the error that ended the stream. */
+    private final BlockingQueue<Object> pages = new LinkedBlockingQueue<>();
+
+    // Guarded by this
+    private int buffered;
+    private boolean inFlight;
+    private boolean closed;
+    private String nextOffset;
+
+    // Consumer thread only
+    private Iterator<Transaction> current = Collections.emptyIterator();
+    private boolean finished;
+    private long pagesConsumed;
+    private long transactionsConsumed;
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * @param template the first page's request; its offset is the starting point and its limit
+     *     is replaced by {@code pageSize}
+     */
+    TransactionStream(AccountServiceStub accounts, GetTransactionsRequest template, int pageSize, int prefetch) {
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("prefetch must be at least 1");
+        }
+        this.accounts = accounts;
+        this.template = template.toBuilder().setLimit(pageSize).build();
+        this.prefetch = prefetch;
+        this.nextOffset = template.getOffset();
+        maybeFetch();
+    }
+
+    private synchronized void maybeFetch() {
+        if (inFlight || closed || nextOffset == null || buffered >= prefetch) {
+            return;
+        }
+        inFlight = true;
+        buffered++;
+        String offset = nextOffset;
+        accounts.getTransactions(template.toBuilder().setOffset(offset).build(), new StreamObserver<GetTransactionsResponse>() {
+            @Override
+            public void onNext(GetTransactionsResponse page) {
+                received(offset, page);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                pages.add(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+    }
+
+    private void received(String requestedOffset, GetTransactionsResponse page) {
+        synchronized (this) {
+            inFlight = false;
+            boolean last = page.getTransactionsCount() == 0
+                    || page.getOffset().isEmpty()
+                    || page.getOffset().equals(requestedOffset);
+            nextOffset = last ? null : page.getOffset();
+            pages.add(page);
+            if (last) {
+                pages.add(END);
+            }
+        }
+        maybeFetch();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (finished) {
+                return false;
+            }
+            Object item;
+            try {
+                item = pages.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Status.CANCELLED.withDescription("Interrupted").withCause(e).asRuntimeException();
+            }
+            if (item == END) {
+                finished = true;
+                return false;
+            }
+            if (item instanceof Throwable) {
+                finished = true;
+                throw Status.fromThrowable((Throwable) item).asRuntimeException();
+            }
+            synchronized (this) {
+                buffered--;
+            }
+            maybeFetch();
+            pagesConsumed++;
+            current = ((GetTransactionsResponse) item).getTransactionsList().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public Transaction next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        transactionsConsumed++;
+        return current.next();
+    }
+
+    /**
+     * Stops fetching further pages. A page already in flight is still received, then dropped.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+    }
+
+    /**
+     * Pages and transactions consumed so far, and their rates since the stream was created.
+     */
+    String stats() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return String.format("%d transactions in %d pages in %.2fs (%.1f transactions/s, %.1f pages/s)",
+                transactionsConsumed, pagesConsumed, seconds, transactionsConsumed / seconds, pagesConsumed / seconds);
+    }
+}
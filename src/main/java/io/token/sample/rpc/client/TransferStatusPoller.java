@@ -0,0 +1,289 @@
+package io.token.sample.rpc.client;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.token.proto.bankapi.Bankapi.GetTransferStatusResponse;
+import io.token.proto.bankapi.TransferServiceGrpc.TransferServiceStub;
+import io.token.proto.common.transaction.TransactionProtos.TransactionStatus;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Polls {@code GetTransferStatus} for any number of pending transfers until each reaches a terminal
+ * status, without a thread per transfer: the next poll of every transfer sits in a hashed timer
+ * wheel, and calls go out on the async stub.
+ *
+ * <p>Each transfer is polled with jittered exponential backoff from {@code --poll-initial} up to
+ * {@code --poll-max}. The delay drops back to the initial one whenever the status changes, and
+ * doubles again on {@code UNAVAILABLE} or {@code RESOURCE_EXHAUSTED}. All polls together are capped
+ * at {@code --poll-rate} per second. Tracking the same transfer twice returns the same future.
+ *
+ * <p>The terminal statuses are listed explicitly: {@code --poll-success} (default {@code SUCCESS})
+ * and {@code --poll-failure} (default every {@code FAILURE_*} status of {@link #DEFAULT_FAILURES}
+ * that this version of the protos has). {@code INVALID} and {@code UNRECOGNIZED}, a status newer than
+ * the protos, are always terminal failures, as polling them again would not tell more.
+ *
+ * <p>Time to settlement, from {@link #track} to the terminal status, is recorded per terminal status
+ * in {@link #settlement()}.
+ */
+final class TransferStatusPoller implements AutoCloseable {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /** The final failures of the bank API; those missing from the protos in use are left out. */
+    static final String DEFAULT_FAILURES = "FAILURE_CANCELED,FAILURE_INSUFFICIENT_FUNDS,FAILURE_INVALID_CURRENCY,"
+            + "FAILURE_PERMISSION_DENIED,FAILURE_QUOTE_EXPIRED,FAILURE_INVALID_AMOUNT,FAILURE_INVALID_QUOTE,"
+            + "FAILURE_EXPIRED,FAILURE_GENERIC,FAILURE_DECLINED";
+
+    private final TransferServiceStub transfers;
+    private final Set<TransactionStatus> successes;
+    /** Successes, configured failures, {@code INVALID} and {@code UNRECOGNIZED}. */
+    private final Set<TransactionStatus> terminal;
+    private final long initialDelayNanos;
+    private final long maxDelayNanos;
+    private final long timeoutNanos;
+    private final long permitIntervalNanos;
+    private final Timer timer = new HashedWheelTimer(
+            new DefaultThreadFactory("transfer-status-poller", true), TICK_NANOS, TimeUnit.NANOSECONDS, 512);
+    private final ConcurrentMap<String, Tracked> pending = new ConcurrentHashMap<>();
+    private final LatencyStats settlement = new LatencyStats();
+    private final LongAdder polls = new LongAdder();
+
+    // Timer thread only
+    private long nextPermitNanos;
+
+    TransferStatusPoller(TransferServiceStub transfers, Collection<TransactionStatus> successes, Collection<TransactionStatus> failures,
+                         long initialDelayNanos, long maxDelayNanos, long timeoutNanos, double maxPollsPerSecond) {
+        this.transfers = transfers;
+        this.successes = EnumSet.copyOf(successes);
+        this.terminal = EnumSet.of(TransactionStatus.INVALID, TransactionStatus.UNRECOGNIZED);
+        terminal.addAll(successes);
+        terminal.addAll(failures);
+        if (terminal.contains(TransactionStatus.PENDING) || terminal.contains(TransactionStatus.PROCESSING)) {
+            throw new IllegalArgumentException("PENDING and PROCESSING cannot be terminal: " + terminal);
+        }
+        this.initialDelayNanos = initialDelayNanos;
+        this.maxDelayNanos = maxDelayNanos;
+        this.timeoutNanos = timeoutNanos;
+        this.permitIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / maxPollsPerSecond);
+    }
+
+    static TransferStatusPoller fromArgs(Args args, TransferServiceStub transfers) {
+        return new TransferStatusPoller(
+                transfers,
+                statuses(args.get("poll-success", "SUCCESS"), true),
+                args.has("poll-failure") ? statuses(args.get("poll-failure", null), true) : statuses(DEFAULT_FAILURES, false),
+                args.getDurationNanos("poll-initial", TimeUnit.MILLISECONDS.toNanos(100)),
+                args.getDurationNanos("poll-max", TimeUnit.SECONDS.toNanos(30)),
+                args.getDurationNanos("poll-timeout", TimeUnit.MINUTES.toNanos(10)),
+                args.getDouble("poll-rate", 200));
+    }
+
+    /**
+     * Starts polling a transfer, unless it is already being polled.
+     *
+     * @return completes with the terminal status, or exceptionally with a
+     *     {@link io.grpc.StatusRuntimeException} if polling fails, times out or the poller is closed
+     */
+    CompletableFuture<TransactionStatus> track(String transferId, String transactionId) {
+        Tracked tracked = pending.get(transferId);
+        if (tracked != null) {
+            return tracked.result;
+        }
+        Tracked created = new Tracked(transferId, transactionId);
+        tracked = pending.putIfAbsent(transferId, created);
+        if (tracked != null) {
+            return tracked.result;
+        }
+        schedule(created, initialDelayNanos);
+        return created.result;
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    long polls() {
+        return polls.sum();
+    }
+
+    /**
+     * Time to settlement per terminal status; timed out and failed transfers are recorded as errors
+     * under the last status seen.
+     */
+    LatencyStats settlement() {
+        return settlement;
+    }
+
+    /**
+     * @param strict whether a name this version of the protos lacks is an error, rather than skipped
+     */
+    static Set<TransactionStatus> statuses(String names, boolean strict) {
+        Set<TransactionStatus> statuses = EnumSet.noneOf(TransactionStatus.class);
+        for (String name : names.split(",")) {
+            try {
+                statuses.add(TransactionStatus.valueOf(name.trim()));
+            } catch (IllegalArgumentException e) {
+                if (strict) {
+                    throw new IllegalArgumentException("Unknown transaction status " + name + ", one of "
+                            + Arrays.toString(TransactionStatus.values()));
+                }
+            }
+        }
+        return statuses;
+    }
+
+    boolean isTerminal(TransactionStatus status) {
+        return terminal.contains(status);
+    }
+
+    boolean isSuccess(TransactionStatus status) {
+        return successes.contains(status);
+    }
+
+    private void schedule(Tracked tracked, long delayNanos) {
+        try {
+            timer.newTimeout(tracked, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (IllegalStateException e) {
+            finish(tracked, null, Status.CANCELLED.withDescription("Poller closed").asRuntimeException());
+        }
+    }
+
+    /**
+     * @return how long to wait before the next poll may be sent, given the rate cap
+     */
+    private long reservePermit() {
+        long now = System.nanoTime();
+        long at = Math.max(now, nextPermitNanos);
+        nextPermitNanos = at + permitIntervalNanos;
+        return at - now;
+    }
+
+    private void poll(Tracked tracked) {
+        polls.increment();
+        tracked.polls++;
+        transfers.getTransferStatus(
+                TestRequests.getTransferStatusRequest(tracked.transferId, tracked.transactionId),
+                new StreamObserver<GetTransferStatusResponse>() {
+                    @Override
+                    public void onNext(GetTransferStatusResponse response) {
+                        polled(tracked, response.getStatus());
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        failed(tracked, Status.fromThrowable(t));
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                });
+    }
+
+    private void polled(Tracked tracked, TransactionStatus status) {
+        if (isTerminal(status)) {
+            finish(tracked, status, null);
+            return;
+        }
+        if (status != tracked.lastStatus) {
+            tracked.lastStatus = status;
+            tracked.delayNanos = initialDelayNanos;
+        } else {
+            tracked.delayNanos = Math.min(tracked.delayNanos * 2, maxDelayNanos);
+        }
+        reschedule(tracked);
+    }
+
+    private void failed(Tracked tracked, Status status) {
+        switch (status.getCode()) {
+            case UNAVAILABLE:
+            case RESOURCE_EXHAUSTED:
+            case DEADLINE_EXCEEDED:
+                tracked.delayNanos = Math.min(tracked.delayNanos * 4, maxDelayNanos);
+                reschedule(tracked);
+                return;
+            default:
+                finish(tracked, null, status.asRuntimeException());
+        }
+    }
+
+    private void reschedule(Tracked tracked) {
+        long remaining = tracked.startNanos + timeoutNanos - System.nanoTime();
+        if (remaining <= 0) {
+            finish(tracked, null, Status.DEADLINE_EXCEEDED
+                    .withDescription("Transfer " + tracked.transferId + " still " + tracked.lastStatus + " after " + tracked.polls + " polls")
+                    .asRuntimeException());
+            return;
+        }
+        // Full jitter over the upper half keeps transfers tracked together from polling in lockstep.
+        long delay = tracked.delayNanos / 2 + ThreadLocalRandom.current().nextLong(tracked.delayNanos / 2 + 1);
+        schedule(tracked, Math.min(delay, remaining));
+    }
+
+    private void finish(Tracked tracked, TransactionStatus status, RuntimeException error) {
+        if (!pending.remove(tracked.transferId, tracked)) {
+            return;
+        }
+        TransactionStatus recorded = status != null ? status : tracked.lastStatus;
+        boolean failed = error != null || !isSuccess(recorded);
+        settlement.record(recorded.name(), System.nanoTime() - tracked.startNanos, failed);
+        if (error != null) {
+            tracked.result.completeExceptionally(error);
+        } else {
+            tracked.result.complete(status);
+        }
+    }
+
+    /**
+     * Stops polling; transfers still pending complete exceptionally with {@code CANCELLED}.
+     */
+    @Override
+    public void close() {
+        timer.stop();
+        for (Tracked tracked : pending.values()) {
+            finish(tracked, null, Status.CANCELLED.withDescription("Poller closed").asRuntimeException());
+        }
+    }
+
+    /**
+     * One pending transfer. Its fields are only touched by the one poll of it in progress, which
+     * the timer and the gRPC callbacks hand over to each other.
+     */
+    private final class Tracked implements TimerTask {
+        final String transferId;
+        final String transactionId;
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<TransactionStatus> result = new CompletableFuture<>();
+        TransactionStatus lastStatus = TransactionStatus.PENDING;
+        long delayNanos = initialDelayNanos;
+        int polls;
+
+        Tracked(String transferId, String transactionId) {
+            this.transferId = transferId;
+            this.transactionId = transactionId;
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            long wait = reservePermit();
+            if (wait < TICK_NANOS) {
+                poll(this);
+            } else {
+                timer.newTimeout(t -> poll(this), wait, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package io.token.sample.rpc.client;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Virtual threads, which need Java 21. This is the Java 8 version; jars built with
+ * {@code -PvirtualThreads} are multi-release and a Java 21 JVM loads the version in
+ * {@code src/java21} instead.
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return an executor that starts a new virtual thread named {@code name-N} for every task
+     */
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        throw new UnsupportedOperationException("Virtual threads need Java 21 and a jar built with -PvirtualThreads, running on Java "
+                + System.getProperty("java.version"));
+    }
+}
@@ -0,0 +1,173 @@
+package io.token.sample.rpc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.Context;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.token.proto.bankapi.AccountServiceGrpc;
+import io.token.proto.bankapi.AccountServiceGrpc.AccountServiceFutureStub;
+import io.token.proto.bankapi.AccountServiceGrpc.AccountServiceStub;
+import io.token.proto.bankapi.Bankapi.GetBalanceRequest;
+import io.token.proto.bankapi.Bankapi.GetBalanceResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResponseCacheTest {
+    private static final GetBalanceRequest REQUEST = TestRequests.getBalanceRequest();
+
+    private final AtomicInteger bankCalls = new AtomicInteger();
+    /** Counted down to let the bank answer; starts open. */
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private Server server;
+    private ManagedChannel channel;
+    private AccountServiceFutureStub stub;
+
+    @Before
+    public void setUp() throws Exception {
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .addService(new AccountServiceGrpc.AccountServiceImplBase() {
+                    @Override
+                    public void getBalance(GetBalanceRequest request, StreamObserver<GetBalanceResponse> responseObserver) {
+                        bankCalls.incrementAndGet();
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        responseObserver.onNext(GetBalanceResponse.getDefaultInstance());
+                        responseObserver.onCompleted();
+                    }
+                })
+                .build()
+                .start();
+        ResponseCache cache = new ResponseCache(TimeUnit.MINUTES.toNanos(1), 100, "ruby");
+        channel = InProcessChannelBuilder.forName(name).intercept(cache.interceptor()).build();
+        stub = AccountServiceGrpc.newFutureStub(channel);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    public void hitIsServedFromTheCache() throws Exception {
+        stub.getBalance(REQUEST).get(5, TimeUnit.SECONDS);
+        stub.getBalance(REQUEST).get(5, TimeUnit.SECONDS);
+        assertEquals(1, bankCalls.get());
+    }
+
+    @Test
+    public void hitIsNotDeliveredFromInsideTheCaller() throws Exception {
+        stub.getBalance(REQUEST).get(5, TimeUnit.SECONDS);
+        AccountServiceStub async = AccountServiceGrpc.newStub(channel);
+        AtomicReference<Thread> listenerThread = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        async.getBalance(REQUEST, new StreamObserver<GetBalanceResponse>() {
+            @Override
+            public void onNext(GetBalanceResponse value) {
+                listenerThread.set(Thread.currentThread());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), listenerThread.get());
+        assertEquals(1, bankCalls.get());
+    }
+
+    @Test
+    public void banksAreCachedSeparately() throws Exception {
+        stub.getBalance(REQUEST).get(5, TimeUnit.SECONDS);
+        stub.withOption(MetadataInterceptor.BANK_ID, "gold").getBalance(REQUEST).get(5, TimeUnit.SECONDS);
+        assertEquals(2, bankCalls.get());
+    }
+
+    @Test
+    public void identicalCallsInFlightAreCoalesced() throws Exception {
+        release = new CountDownLatch(1);
+        ListenableFuture<GetBalanceResponse> leader = stub.getBalance(REQUEST);
+        awaitBankCalls(1);
+        ListenableFuture<GetBalanceResponse> joiner = stub.getBalance(REQUEST);
+        release.countDown();
+        leader.get(5, TimeUnit.SECONDS);
+        joiner.get(5, TimeUnit.SECONDS);
+        assertEquals(1, bankCalls.get());
+    }
+
+    @Test
+    public void cancelledJoinerLeavesWithoutWaiting() throws Exception {
+        release = new CountDownLatch(1);
+        ListenableFuture<GetBalanceResponse> leader = stub.getBalance(REQUEST);
+        awaitBankCalls(1);
+        Context.CancellableContext context = Context.current().withCancellation();
+        ListenableFuture<GetBalanceResponse> joiner = context.call(() -> stub.getBalance(REQUEST));
+        context.cancel(null);
+        assertEquals(Status.Code.CANCELLED, codeOf(joiner));
+        assertTrue(!leader.isDone());
+        release.countDown();
+        leader.get(5, TimeUnit.SECONDS);
+        assertEquals(1, bankCalls.get());
+    }
+
+    @Test
+    public void joinerEndsAtItsOwnDeadline() throws Exception {
+        release = new CountDownLatch(1);
+        ListenableFuture<GetBalanceResponse> leader = stub.getBalance(REQUEST);
+        awaitBankCalls(1);
+        ListenableFuture<GetBalanceResponse> joiner = stub.withDeadlineAfter(100, TimeUnit.MILLISECONDS).getBalance(REQUEST);
+        assertEquals(Status.Code.DEADLINE_EXCEEDED, codeOf(joiner));
+        assertTrue(!leader.isDone());
+        release.countDown();
+        leader.get(5, TimeUnit.SECONDS);
+    }
+
+    private void awaitBankCalls(int calls) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bankCalls.get() < calls && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(calls, bankCalls.get());
+    }
+
+    private static Status.Code codeOf(ListenableFuture<?> future) throws InterruptedException, TimeoutException {
+        try {
+            // Well before the bank answers the leader
+            future.get(2, TimeUnit.SECONDS);
+            fail("Expected the call to fail");
+            return null;
+        } catch (ExecutionException e) {
+            return ((StatusRuntimeException) e.getCause()).getStatus().getCode();
+        }
+    }
+}